@@ -5,8 +5,15 @@ package org.hivevm.util.git;
 
 import java.io.File;
 import java.io.IOException;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -14,16 +21,32 @@ import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.MergeCommand.FastForwardMode;
 import org.eclipse.jgit.api.PullCommand;
 import org.eclipse.jgit.api.PullResult;
+import org.eclipse.jgit.api.Status;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.api.errors.RefNotFoundException;
+import org.eclipse.jgit.errors.ConfigInvalidException;
 import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.BranchConfig;
+import org.eclipse.jgit.lib.IndexDiff;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ProgressMonitor;
+import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.SubmoduleConfig.FetchRecurseSubmodulesMode;
 import org.eclipse.jgit.merge.ContentMergeStrategy;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.submodule.SubmoduleWalk;
 import org.eclipse.jgit.transport.CredentialsProvider;
+import org.eclipse.jgit.transport.FetchResult;
+import org.eclipse.jgit.transport.FilterSpec;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.RemoteRefUpdate;
 import org.eclipse.jgit.transport.TagOpt;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
 import org.hivevm.util.Version;
 
 /**
@@ -36,39 +59,69 @@ import org.hivevm.util.Version;
  */
 public class Repository implements AutoCloseable {
 
-    private static final Pattern HASH = Pattern.compile("^[0-9a-fA-F]{40,40}$");
+    private static final int MAX_JOURNAL_PATHS = 1000;
 
 
     private final Git                 git;
     private final AnyObjectId         oid;
     private final CredentialsProvider credentials;
-    private final List<Throwable>     exceptions;
+    private final RepositoryOptions   options;
+    private final Queue<Throwable>    exceptions;
+    private final ProgressMonitor     monitor;
+    private final boolean             root;
+
+    private RepositoryMergeBase mergeBase;
 
     /**
      * Constructs an instance of {@link Repository}.
      */
-    Repository(Git git, CredentialsProvider credentials) {
+    Repository(Git git, CredentialsProvider credentials, RepositoryOptions options) {
         this.git = git;
         this.oid = null;
         this.credentials = credentials;
-        this.exceptions = new ArrayList<>();
+        this.options = options;
+        this.exceptions = new ConcurrentLinkedQueue<>();
+        this.monitor = NullProgressMonitor.INSTANCE;
+        this.root = true;
     }
 
     /**
      * Constructs an instance of {@link Repository}.
      */
     Repository(Git git, AnyObjectId oid, Repository parent) {
+        this(git, oid, parent, parent.exceptions);
+    }
+
+    /**
+     * Constructs an instance of {@link Repository}, which records its exceptions and the
+     * exceptions of its submodules in the queue.
+     */
+    Repository(Git git, AnyObjectId oid, Repository parent, Queue<Throwable> exceptions) {
+        this(git, oid, parent, exceptions, parent.monitor);
+    }
+
+    /**
+     * Constructs an instance of {@link Repository}, which records its exceptions in the queue. The
+     * operations of the repository and its submodules are cancelled by the monitor.
+     */
+    Repository(Git git, AnyObjectId oid, Repository parent, Queue<Throwable> exceptions,
+        ProgressMonitor monitor) {
         this.git = git;
         this.oid = oid;
         this.credentials = parent.credentials;
-        this.exceptions = parent.exceptions;
+        this.options = parent.options;
+        this.exceptions = exceptions;
+        this.monitor = monitor;
+        this.root = false;
     }
 
     /**
-     * Retrieves the working directory of the repository.
+     * Retrieves the working directory of the repository, the Git directory of a bare repository or
+     * <code>null</code> for a repository in memory.
      */
     public final File getLocation() {
-        return getGit().getRepository().getWorkTree();
+        var repository = getGit().getRepository();
+        return repository.isBare() ? repository.getDirectory() : repository.getWorkTree();
     }
 
     /**
@@ -92,14 +145,30 @@ public class Repository implements AutoCloseable {
         return this.credentials;
     }
 
+    /**
+     * Retrieves the {@link ProgressMonitor} of the operations, which tells whether they have been
+     * cancelled.
+     */
+    protected final ProgressMonitor getMonitor() {
+        return this.monitor;
+    }
+
+    /**
+     * Retrieves the {@link RepositoryOptions} shared by the repository and its submodules.
+     */
+    protected final RepositoryOptions getOptions() {
+        return this.options;
+    }
+
     /**
      * Retrieves the list of exceptions recorded in the repository. The method clears the internal
      * collection of exceptions after retrieving them, effectively transferring the ownership of the
      * exceptions to the caller.
      */
     public final List<Throwable> getExceptions() {
-        var errors = new ArrayList<>(this.exceptions);
-        this.exceptions.clear();
+        var errors = new ArrayList<Throwable>();
+        for (var error = this.exceptions.poll(); error != null; error = this.exceptions.poll())
+            errors.add(error);
         return errors;
     }
 
@@ -116,7 +185,8 @@ public class Repository implements AutoCloseable {
     }
 
     /**
-     * Handles exceptions by adding them to the internal collection of recorded exceptions.
+     * Handles exceptions by adding them to the internal collection of recorded exceptions. The
+     * collection is shared with the submodules and may be used concurrently.
      */
     protected final void handleException(Exception exception) {
         this.exceptions.add(exception);
@@ -143,7 +213,7 @@ public class Repository implements AutoCloseable {
      * repository.
      */
     public final Revision getRevision(Version version) throws IOException {
-        return RepositoryVersion.getRevision(getGit(), version);
+        return RepositoryVersion.getRevision(getGit(), getCredentials(), version);
     }
 
     /**
@@ -153,29 +223,97 @@ public class Repository implements AutoCloseable {
      * accordingly. It also recursively fetches changes for all submodules. The following options
      * are configured for the fetch operation: - Credentials from the associated
      * `CredentialsProvider` are used for authentication. - Tags from the remote repository are
-     * fetched. - Deleted references in the remote repository are removed locally. - Fetched objects
-     * are verified for integrity. - Submodules are recursively fetched.
+     * fetched, unless the tag option or the refspecs of the remote restrict them, see
+     * {@link #getTagOpt()}. - Deleted references in the remote repository are removed locally. -
+     * Fetched objects are verified for integrity, unless the objects are filtered by a partial
+     * clone.
      * <p>
-     * If any exceptions occur during the fetch process, they are handled and recorded using the
-     * repository's exception handling mechanism.
+     * The fetch is planned by the {@link RepositoryFetchPlan}: each repository is fetched exactly
+     * once, before its submodules. The commits recorded by the gitlinks of the new superproject
+     * commits are fetched explicitly, if a submodule doesn't provide them after its fetch. The
+     * submodules are fetched in parallel, if a parallelism is defined by the
+     * {@link RepositoryBuilder}. If any exceptions occur during the fetch process, they are handled
+     * and recorded using the repository's exception handling mechanism.
      */
     public final void fetch() {
-        forEach(r -> r.fetch());
+        try (var executor = new RepositoryExecutor(getOptions(), this::handleException)) {
+            new RepositoryFetchPlan(executor, getOptions().isOnDemand()).fetch(this, Set.of());
+        }
+    }
 
-        var command = getGit().fetch();
-        command.setCredentialsProvider(getCredentials());
-        command.setTagOpt(TagOpt.FETCH_TAGS);
-        command.setRemoveDeletedRefs(true);
-        command.setCheckFetchedObjects(true);
-        command.setRecurseSubmodules(FetchRecurseSubmodulesMode.YES);
+    /**
+     * Fetches the refs matching the refspecs from the remote into this Git repository only, without
+     * its submodules. Only the matching refs are negotiated and updated, so the refspecs limit the
+     * work on a remote with many branches. Without refspecs, the refspecs of the remote are used.
+     */
+    public final void fetch(RefSpec... refSpecs) {
+        fetchRepository(Arrays.asList(refSpecs));
+    }
 
-        try {
-            command.call();
-        } catch (GitAPIException e) {
-            handleException(e);
+    /**
+     * Performs the fetch operation on this Git repository only. Returns the {@link FetchResult} or
+     * <code>null</code> if the fetch failed.
+     */
+    protected final FetchResult fetchRepository() {
+        return fetchRepository(List.of());
+    }
+
+    /**
+     * Performs the fetch operation with the refspecs on this Git repository only. Without refspecs,
+     * the refspecs of the remote are used. Returns the {@link FetchResult} or <code>null</code> if
+     * the fetch failed.
+     */
+    private FetchResult fetchRepository(List<RefSpec> refSpecs) {
+        try (var timer = new RepositoryTimer(this, "fetch")) {
+            var command = getGit().fetch();
+            command.setCredentialsProvider(getCredentials());
+            command.setTagOpt(getTagOpt());
+            command.setRemoveDeletedRefs(true);
+            if (!refSpecs.isEmpty())
+                command.setRefSpecs(refSpecs);
+            command.setRecurseSubmodules(FetchRecurseSubmodulesMode.NO);
+            command.setProgressMonitor(timer);
+            var filter = getGit().getRepository().getConfig().getString(
+                ConfigConstants.CONFIG_REMOTE_SECTION, Constants.DEFAULT_REMOTE_NAME,
+                RepositoryBuilder.PARTIAL_CLONE_FILTER);
+            command.setCheckFetchedObjects(filter == null);
+
+            try {
+                updateMirror();
+                if (filter != null) {
+                    var spec = FilterSpec.fromFilterLine(filter);
+                    command.setTransportConfigCallback(t -> t.setFilterSpec(spec));
+                }
+                var result = command.call();
+                timer.setRefs(result.getTrackingRefUpdates().size());
+                return result;
+            } catch (GitAPIException | IOException e) {
+                timer.setFailed();
+                handleException(e);
+            }
+            return null;
         }
     }
 
+    /**
+     * Gets the {@link TagOpt} of the fetches from the origin. The tag option of the remote is used,
+     * if it is configured. Otherwise all tags are fetched, as long as the remote fetches all
+     * branches; restricted refspecs only follow the tags of the fetched commits.
+     */
+    protected final TagOpt getTagOpt() {
+        var config = getGit().getRepository().getConfig();
+        var option = config.getString(ConfigConstants.CONFIG_REMOTE_SECTION,
+            Constants.DEFAULT_REMOTE_NAME, "tagopt");
+        if (option != null)
+            return TagOpt.fromOption(option);
+
+        var specs = config.getStringList(ConfigConstants.CONFIG_REMOTE_SECTION,
+            Constants.DEFAULT_REMOTE_NAME, "fetch");
+        var restricted = (specs.length > 0) && Arrays.stream(specs)
+            .noneMatch(s -> Constants.R_HEADS.concat("*").equals(new RefSpec(s).getSource()));
+        return restricted ? TagOpt.AUTO_FOLLOW : TagOpt.FETCH_TAGS;
+    }
+
     /**
      * Pulls all changes from the remote repository to the local repository and updates submodules.
      * <p>
@@ -183,32 +321,104 @@ public class Repository implements AutoCloseable {
      * The following configurations are applied during the pull operation: - Authentication is
      * provided using the associated {@link CredentialsProvider}. - The fast-forward mode is set to
      * {@link PullCommand.FastForwardMode#FF_ONLY}. - The content merge strategy is set to
-     * {@link ContentMergeStrategy#OURS}. - Fetches changes recursively for all submodules using
-     * {@link FetchRecurseSubmodulesMode#YES}.
+     * {@link ContentMergeStrategy#OURS}. - The submodules are pulled on their own, so the fetch of
+     * the pull doesn't recurse into them.
      * <p>
      * If the pull operation is not successful, an instance of {@link RepositoryException} is
      * thrown. Any exceptions during the process are handled through the repository's exception
-     * handling mechanism.
+     * handling mechanism. The submodules are pulled in parallel, if a parallelism is defined by the
+     * {@link RepositoryBuilder}.
      */
     public final void pull() {
-        forEach(r -> r.pull());
+        forAll(Repository::pullRepository);
+        pullRepository();
+    }
 
-        var command = getGit().pull();
-        command.setCredentialsProvider(getCredentials());
-        command.setFastForward(FastForwardMode.FF_ONLY);
-        command.setContentMergeStrategy(ContentMergeStrategy.OURS);
-        command.setRecurseSubmodules(FetchRecurseSubmodulesMode.YES);
+    /**
+     * Performs the pull operation on this Git repository only.
+     */
+    private void pullRepository() {
+        try (var timer = new RepositoryTimer(this, "pull")) {
+            var command = getGit().pull();
+            command.setCredentialsProvider(getCredentials());
+            command.setFastForward(FastForwardMode.FF_ONLY);
+            command.setContentMergeStrategy(ContentMergeStrategy.OURS);
+            command.setRecurseSubmodules(FetchRecurseSubmodulesMode.NO);
+            command.setProgressMonitor(timer);
 
-        try {
-            PullResult result = command.call();
-            if (!result.isSuccessful()) {
-                handleException(new RepositoryException("Pull aborted"));
+            try {
+                updateMirror();
+                if (RepositorySparse.read(getGit().getRepository()) != null) {
+                    timer.setRefs(pullSparse(timer));
+                    return;
+                }
+
+                PullResult result = command.call();
+                if (result.getFetchResult() != null)
+                    timer.setRefs(result.getFetchResult().getTrackingRefUpdates().size());
+                if (!result.isSuccessful()) {
+                    timer.setFailed();
+                    handleException(new RepositoryException("Pull aborted"));
+                }
+            } catch (GitAPIException | IOException e) {
+                timer.setFailed();
+                handleException(e);
             }
-        } catch (GitAPIException e) {
-            handleException(e);
         }
     }
 
+    /**
+     * Performs the pull operation on a sparse checkout. The tracking branch is fetched and the
+     * branch is fast-forwarded to it, so only the paths of the sparse checkout are written. Like
+     * the pull of JGit, the pull fails if it would replace local changes. Returns the number of
+     * refs updated by the fetch.
+     */
+    private int pullSparse(ProgressMonitor monitor) throws GitAPIException, IOException {
+        var command = getGit().fetch();
+        command.setCredentialsProvider(getCredentials());
+        command.setRecurseSubmodules(FetchRecurseSubmodulesMode.NO);
+        command.setProgressMonitor(monitor);
+        var refs = command.call().getTrackingRefUpdates().size();
+
+        var repository = getGit().getRepository();
+        var branch = repository.getBranch();
+        var tracking = new BranchConfig(repository.getConfig(), branch).getTrackingBranch();
+        var upstream = (tracking == null) ? null : repository.resolve(tracking);
+        if (upstream == null)
+            throw new RepositoryException("No tracking branch for '" + branch + "'");
+
+        try (var walk = new RevWalk(repository)) {
+            var head = walk.parseCommit(repository.resolve(Constants.HEAD));
+            var commit = walk.parseCommit(upstream);
+            if (head.equals(commit))
+                return refs;
+            if (!walk.isMergedInto(head, commit))
+                throw new RepositoryException("Pull aborted");
+            checkout(commit, branch);
+        }
+        return refs;
+    }
+
+    /**
+     * Refreshes the {@link RepositoryMirror} this repository is served from, if the mirror is
+     * stale. A repository is served from the mirror if the fetch URL of its origin is the location
+     * of the mirror for its push URL.
+     */
+    private void updateMirror() throws GitAPIException, IOException {
+        var mirror = getOptions().getMirror();
+        if (mirror == null)
+            return;
+
+        var config = getGit().getRepository().getConfig();
+        var url = config.getString(ConfigConstants.CONFIG_REMOTE_SECTION,
+            Constants.DEFAULT_REMOTE_NAME, ConfigConstants.CONFIG_KEY_URL);
+        var remote = config.getString(ConfigConstants.CONFIG_REMOTE_SECTION,
+            Constants.DEFAULT_REMOTE_NAME, "pushurl");
+        if ((url != null) && (remote != null)
+            && new File(url).getAbsoluteFile().equals(mirror.getLocation(remote).getAbsoluteFile()))
+            mirror.update(remote, getCredentials(), getMonitor());
+    }
+
     /**
      * Pushes local changes to the remote repository and its submodules.
      * <p>
@@ -217,37 +427,51 @@ public class Repository implements AutoCloseable {
      * the push operation:
      * <p>
      * - Authentication is provided using the associated {@link CredentialsProvider}. - The push
-     * operation is forced using {@code setForce(true)} to override remote changes. - Tags from the
-     * local repository are pushed to the remote.
+     * operation is forced using {@code setForce(true)} to override remote changes. - The current
+     * branch and the tags of the local repository are pushed to the remote in a single transport
+     * session.
      * <p>
-     * If any exceptions occur during the push operation, they are handled and recorded using the
-     * repository's exception handling mechanism.
-     * <p>
-     * This operation ensures that both local commits and tags are synchronized with the remote
-     * repository.
+     * The submodules are pushed before the repository, in parallel if a parallelism is defined by
+     * the {@link RepositoryBuilder}. The result of each pushed ref is reported, so a rejected ref
+     * doesn't hide the refs that have been pushed. If any exceptions occur during the push
+     * operation, they are handled and recorded using the repository's exception handling mechanism.
      */
-    public final void push() {
-        forEach(r -> r.push());
-
-        var command = getGit().push();
-        command.setCredentialsProvider(getCredentials());
-        command.setForce(true);
+    public final List<RepositoryPushResult> push() {
+        var results = new ConcurrentLinkedQueue<RepositoryPushResult>();
+        forAll(r -> r.pushRepository(results));
+        pushRepository(results);
+        return new ArrayList<>(results);
+    }
 
-        try {
-            command.call();
-        } catch (GitAPIException e) {
-            handleException(e);
-        }
+    /**
+     * Pushes the current branch and the tags of this Git repository only.
+     */
+    private void pushRepository(Collection<RepositoryPushResult> results) {
+        try (var timer = new RepositoryTimer(this, "push")) {
+            var command = getGit().push();
+            command.setCredentialsProvider(getCredentials());
+            command.setForce(true);
+            command.setProgressMonitor(timer);
 
-        command = getGit().push();
-        command.setCredentialsProvider(getCredentials());
-        command.setForce(true);
-        command.setPushTags();
+            try {
+                var branch = getGit().getRepository().getFullBranch();
+                if ((branch != null) && branch.startsWith(Constants.R_HEADS))
+                    command.add(branch);
+                command.setPushTags();
 
-        try {
-            command.call();
-        } catch (GitAPIException e) {
-            handleException(e);
+                var refs = 0;
+                for (var result : command.call()) {
+                    for (var update : result.getRemoteUpdates()) {
+                        var pushed = new RepositoryPushResult(getLocation(), update);
+                        refs += (pushed.status() == RemoteRefUpdate.Status.OK) ? 1 : 0;
+                        results.add(pushed);
+                    }
+                }
+                timer.setRefs(refs);
+            } catch (GitAPIException | IOException e) {
+                timer.setFailed();
+                handleException(e);
+            }
         }
     }
 
@@ -260,13 +484,79 @@ public class Repository implements AutoCloseable {
         var command = getGit().commit();
         command.setCredentialsProvider(getCredentials());
         command.setMessage(message);
-        command.setAll(true);
 
-        try {
-            if (!getGit().status().call().isClean())
+        try (var timer = new RepositoryTimer(this, "commit")) {
+            try {
+                var status = getStatus();
+                if (status.isClean())
+                    return;
+
+                if (RepositorySparse.read(getGit().getRepository()) == null)
+                    command.setAll(true);
+                else
+                    stage(status);
                 command.call();
-        } catch (GitAPIException e) {
-            handleException(e);
+                timer.setRefs(1);
+            } catch (GitAPIException | IOException e) {
+                timer.setFailed();
+                handleException(e);
+            }
+        }
+    }
+
+    /**
+     * Gets the status of the work tree. If the {@link RepositoryOptions} define a
+     * {@link RepositoryJournal}, only the paths changed since the last status are inspected and a
+     * new snapshot is taken. Without known changes the whole work tree is inspected.
+     */
+    protected final Status getStatus() throws GitAPIException, IOException {
+        var repository = getGit().getRepository();
+        var journal = getOptions().getJournal(repository);
+        var changed = (journal == null) ? null : journal.getChanged();
+        if ((changed != null) && (changed.size() > Repository.MAX_JOURNAL_PATHS))
+            changed = null;
+
+        Status status;
+        if ((changed != null) && changed.isEmpty())
+            status = Repository.getCleanStatus(repository);
+        else {
+            var command = getGit().status();
+            if (changed != null)
+                changed.forEach(command::addPath);
+            status = command.call();
+        }
+
+        if (journal != null)
+            journal.snapshot(status);
+        return status;
+    }
+
+    /**
+     * Gets the clean status of a work tree without changes. The diff is restricted to no path at
+     * all, so neither the index nor the work tree is inspected.
+     */
+    private static Status getCleanStatus(org.eclipse.jgit.lib.Repository repository)
+        throws IOException {
+        var diff = new IndexDiff(repository, Constants.HEAD, new FileTreeIterator(repository));
+        diff.setFilter(TreeFilter.ALL.negate());
+        diff.diff();
+        return new Status(diff);
+    }
+
+    /**
+     * Stages the modified and deleted files of a sparse checkout. The paths outside of the sparse
+     * checkout are not reported by the status, so they are kept as they are.
+     */
+    private void stage(Status status) throws GitAPIException {
+        if (!status.getModified().isEmpty()) {
+            var command = getGit().add();
+            status.getModified().forEach(command::addFilepattern);
+            command.call();
+        }
+        if (!status.getMissing().isEmpty()) {
+            var command = getGit().rm().setCached(true);
+            status.getMissing().forEach(command::addFilepattern);
+            command.call();
         }
     }
 
@@ -285,11 +575,14 @@ public class Repository implements AutoCloseable {
      * preserved and reset to a particular commit across the collection.
      * <p>
      * Note: Proper error handling is implemented to address potential issues that may arise during
-     * the stash or checkout operations to ensure stability during execution.
+     * the stash or checkout operations to ensure stability during execution. Submodules that are
+     * already positioned at their commit without uncommitted changes are skipped.
      */
     public final void checkout() {
         forEach(r -> {
             try {
+                if (r.isPositioned(null))
+                    return;
                 r.stash(null);
                 r.checkout(r.getCommit(r.getObjectId()));
             } catch (GitAPIException | IOException e) {
@@ -323,17 +616,24 @@ public class Repository implements AutoCloseable {
      * checking out the corresponding branch within each submodule.
      * <p>
      * If the branch does not exist in the repository, it is created and set to track the remote
-     * branch with the same name.
+     * branch with the same name. For a sparse checkout, only the paths of the sparse checkout are
+     * updated. Submodules that are already positioned at their commit on the branch without
+     * uncommitted changes are skipped.
      */
     public final RevCommit checkout(String name) throws GitAPIException, IOException {
         var ref = getGit().getRepository().findRef(name);
 
-        var command = getGit().checkout();
-        command.setCreateBranch(ref == null);
-        command.setStartPoint("origin/" + name).setName(name);
-        ref = command.call();
+        if (RepositorySparse.read(getGit().getRepository()) == null) {
+            var command = getGit().checkout();
+            command.setCreateBranch(ref == null);
+            command.setStartPoint("origin/" + name).setName(name);
+            ref = command.call();
+        } else
+            ref = checkoutSparse(name, ref);
         forEach(r -> {
             try {
+                if (r.isPositioned(name))
+                    return;
                 r.stash(null);
                 r.checkout(r.getCommit(r.getObjectId()), name);
             } catch (GitAPIException | IOException e) {
@@ -370,20 +670,27 @@ public class Repository implements AutoCloseable {
      * <p>
      * This method utilizes the Git stash command to save the current working directory state.
      * Untracked files are not included in the stash. The provided message is used as the index and
-     * working directory message for the stash.
+     * working directory message for the stash, without a message the default messages are used.
      * <p>
      * If an exception occurs during the stash operation, it is handled and recorded using the
-     * repository's exception handling mechanism.
+     * repository's exception handling mechanism. The stash of a sparse checkout is created by the
+     * {@link RepositoryCheckout}, which only resets the changed paths.
      */
     public final void stash(String message) {
         var command = getGit().stashCreate();
         command.setIncludeUntracked(false);
-        command.setIndexMessage(message);
-        command.setWorkingDirectoryMessage(message);
+        if (message != null) {
+            command.setIndexMessage(message);
+            command.setWorkingDirectoryMessage(message);
+        }
 
         try {
-            command.call();
-        } catch (GitAPIException e) {
+            if (RepositorySparse.read(getGit().getRepository()) == null)
+                command.call();
+            else
+                new RepositoryCheckout(getGit().getRepository(), getCredentials()).stash(message,
+                    getGit().status().call());
+        } catch (GitAPIException | IOException e) {
             handleException(e);
         }
     }
@@ -395,65 +702,246 @@ public class Repository implements AutoCloseable {
      * the commit associated with that object ID. Otherwise, it attempts to find a Git reference by
      * the given name and retrieves the commit associated with that reference. If no such reference
      * is found, the method returns null.
+     * <p>
+     * Each call opens a new {@link RepositoryQuery}, so many commits should be resolved within a
+     * session of {@link #query()}.
      */
     public final RevCommit getCommit(String name) throws GitAPIException, IOException {
-        var matcher = Repository.HASH.matcher(name);
-        if (matcher.find())
-            return getCommit(ObjectId.fromString(name));
-        var ref = getGit().getRepository().findRef(name);
-        return (ref == null) ? null : getCommit(ref.getObjectId());
+        try (var query = query()) {
+            return query.getCommit(name);
+        }
     }
 
     /**
      * Retrieves a specific commit from the repository using its object ID.
      */
     protected final RevCommit getCommit(AnyObjectId id) throws GitAPIException, IOException {
-        try (var walk = new RevWalk(getGit().getRepository())) {
-            return walk.parseCommit(id);
+        try (var query = query()) {
+            return query.getCommit(id);
+        }
+    }
+
+    /**
+     * Opens a {@link RepositoryQuery} session, which resolves commits with a shared
+     * {@link RevWalk} and object reader. The session has to be closed after use.
+     */
+    public final RepositoryQuery query() {
+        return new RepositoryQuery(getGit().getRepository());
+    }
+
+    /**
+     * Creates a {@link RepositoryBacklog}, which extracts the backlog keys matching the patterns
+     * from the commit messages of a range. The keys are cached by the backlog, so it should be kept
+     * for repeated queries.
+     */
+    public final RepositoryBacklog backlog(Pattern... patterns) {
+        return new RepositoryBacklog(getGit().getRepository(), Arrays.asList(patterns),
+            mergeBase());
+    }
+
+    /**
+     * Creates a {@link RepositoryReleaseNotes}, which streams the notes of the commits between two
+     * releases with the backlog keys matching the patterns. The ranges of the changed submodules
+     * are walked in parallel on the executor, if one is given.
+     */
+    public final RepositoryReleaseNotes releaseNotes(Executor executor, Pattern... patterns) {
+        return new RepositoryReleaseNotes(this, backlog(patterns), executor);
+    }
+
+    /**
+     * Gets the {@link RepositoryMergeBase} of the repository, which memoizes the merge bases of
+     * pairs of commits as long as the repository is open.
+     */
+    public final synchronized RepositoryMergeBase mergeBase() {
+        if (this.mergeBase == null)
+            this.mergeBase = new RepositoryMergeBase(getGit().getRepository());
+        return this.mergeBase;
+    }
+
+    /**
+     * Gets the best merge base of the commits with the names or <code>null</code> if they don't
+     * have a common ancestor, see {@link #mergeBase()}.
+     */
+    public final ObjectId getMergeBase(String first, String second)
+        throws GitAPIException, IOException {
+        return mergeBase().getMergeBase(first, second);
+    }
+
+    /**
+     * Creates a {@link RepositorySvnIndex}, which maps the SVN revisions of a migrated history to
+     * its commits. The index is kept in the Git directory and extended with the new commits on
+     * demand.
+     */
+    public final RepositorySvnIndex svnIndex() {
+        return new RepositorySvnIndex(getGit().getRepository());
+    }
+
+    /**
+     * Creates a {@link RepositoryAsync}, which runs the operations of the repository on the
+     * executor and completes a future per operation. Without a timeout, the operations are not
+     * limited in time.
+     */
+    public final RepositoryAsync async(Executor executor, Duration timeout) {
+        return new RepositoryAsync(this, executor, timeout);
+    }
+
+    /**
+     * Retrieves the commits of the repository with the object IDs, in the order of the IDs. The
+     * commits are parsed in bulk within a single {@link RepositoryQuery}.
+     */
+    public final List<RevCommit> getCommits(Collection<? extends AnyObjectId> ids)
+        throws IOException {
+        try (var query = query()) {
+            return query.getCommits(ids);
         }
     }
 
     /**
-     * Checks out a specified commit within the Git repository by performing branch operations. The
-     * method retrieves the current branch from the repository, checks out the specified commit, and
-     * updates the branch accordingly. If any errors occur during the process, they are handled
-     * using the exception handling mechanism of the repository.
+     * Returns <code>true</code> if HEAD of the repository is a branch at the commit of the
+     * repository and there are no uncommitted changes, so a checkout of the commit wouldn't change
+     * anything. If a branch is specified, HEAD has to be that branch. The status is only computed
+     * if the commit and the branch match.
+     */
+    protected final boolean isPositioned(String branch) throws GitAPIException, IOException {
+        var repository = getGit().getRepository();
+        var head = repository.resolve(Constants.HEAD);
+        if ((head == null) || (getObjectId() == null) || !head.equals(getObjectId()))
+            return false;
+
+        var fullBranch = repository.getFullBranch();
+        if ((fullBranch == null) || !fullBranch.startsWith(Constants.R_HEADS))
+            return false;
+        if ((branch != null) && !fullBranch.equals(Constants.R_HEADS + branch))
+            return false;
+        return !getStatus().hasUncommittedChanges();
+    }
+
+    /**
+     * Checks out a specified commit within the Git repository. The commit is checked out to the
+     * current branch, or to HEAD if HEAD is detached. If any errors occur during the process, they
+     * are handled using the exception handling mechanism of the repository.
      */
     protected final void checkout(RevCommit commit) {
         try {
-            checkout(commit, getGit().getRepository().getBranch());
-        } catch (GitAPIException | IOException e) {
+            var branch = getGit().getRepository().getFullBranch();
+            checkoutRef(commit, (branch != null && branch.startsWith(Constants.R_HEADS)) ? branch
+                : Constants.HEAD);
+        } catch (IOException e) {
             handleException(e);
         }
     }
 
     /**
-     * Checks out a specified commit to a branch in the Git repository by renaming, deleting,
-     * recreating, and resetting the branch to the provided commit.
+     * Checks out a specified commit to a branch in the Git repository. The branch is moved to the
+     * commit with a single ref update, then the index and the work tree are updated by the
+     * {@link RepositoryCheckout} for the paths that differ between the index and the tree of the
+     * commit and HEAD is linked to the branch. If the checkout fails, the branch is moved back.
+     * <p>
+     * Local changes of the updated paths are replaced, so they have to be stashed before.
+     */
+    protected final void checkout(RevCommit commit, String branch)
+        throws GitAPIException, IOException {
+        if (branch == null)
+            throw new IllegalArgumentException("No branch for the checkout of " + commit.name());
+        checkoutRef(commit, Constants.R_HEADS + branch);
+    }
+
+    /**
+     * Moves the branch, or the detached HEAD, to the commit and checks it out.
+     */
+    private void checkoutRef(RevCommit commit, String name) throws IOException {
+        try (var timer = new RepositoryTimer(this, "checkout")) {
+            try {
+                var repository = getGit().getRepository();
+                var previous = repository.exactRef(name);
+                var old = (previous == null) ? null : previous.getObjectId();
+
+                Repository.moveRef(repository, name, commit, "checkout: moving " + name + " to "
+                    + commit.name());
+                try {
+                    new RepositoryCheckout(repository, getCredentials()).checkout(commit.getTree(),
+                        false);
+                } catch (IOException | RuntimeException e) {
+                    Repository.resetRef(repository, name, old);
+                    throw e;
+                }
+
+                if (!Constants.HEAD.equals(name) && !name.equals(repository.getFullBranch()))
+                    repository.updateRef(Constants.HEAD).link(name);
+                timer.setRefs(1);
+            } catch (IOException | RuntimeException e) {
+                timer.setFailed();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Moves the ref back to the object it pointed to before a failed checkout, or deletes it if it
+     * didn't exist.
      */
-    protected final void checkout(RevCommit commit, String branch) throws GitAPIException {
-        var hash = commit.getId().getName();
+    private static void resetRef(org.eclipse.jgit.lib.Repository repository, String name,
+        ObjectId old) throws IOException {
+        if (old != null) {
+            Repository.moveRef(repository, name, old, "checkout: reverting " + name + " to "
+                + old.name());
+            return;
+        }
+        var update = repository.updateRef(name, Constants.HEAD.equals(name));
+        update.setForceUpdate(true);
+        update.delete();
+    }
 
-        getGit().branchRename().setNewName(hash).setOldName(branch).call();
-        getGit().branchDelete().setBranchNames(branch).setForce(true).call();
-        getGit().checkout().setCreateBranch(true).setName(branch).setStartPoint(commit).call();
-        getGit().branchDelete().setBranchNames(hash).setForce(true).call();
+    /**
+     * Moves the ref to the object with a forced update. HEAD is updated without following its
+     * symbolic ref.
+     */
+    private static void moveRef(org.eclipse.jgit.lib.Repository repository, String name,
+        ObjectId id, String message) throws IOException {
+        var update = repository.updateRef(name, Constants.HEAD.equals(name));
+        update.setNewObjectId(id);
+        update.setRefLogMessage(message, false);
+        switch (update.forceUpdate()) {
+            case NEW, FORCED, FAST_FORWARD, NO_CHANGE:
+                break;
+            default:
+                throw new IOException("'%s' can't be moved to %s".formatted(name, id.name()));
+        }
+    }
+
+    /**
+     * Checks out the branch of a sparse checkout. If the branch doesn't exist, it is created from
+     * the remote branch with the same name and set to track it. Like the checkout of JGit, the
+     * checkout fails if it would replace local changes.
+     */
+    private Ref checkoutSparse(String name, Ref ref) throws GitAPIException, IOException {
+        var repository = getGit().getRepository();
+        var branch = org.eclipse.jgit.lib.Repository.shortenRefName(name);
+        var id = (ref == null) ? repository.resolve(Constants.R_REMOTES + "origin/" + branch)
+            : ref.getObjectId();
+        if (id == null)
+            throw new RefNotFoundException("Ref " + name + " cannot be resolved");
+
+        checkout(getCommit(id), branch);
+        if (ref == null) {
+            var config = repository.getConfig();
+            config.setString(ConfigConstants.CONFIG_BRANCH_SECTION, branch,
+                ConfigConstants.CONFIG_KEY_REMOTE, Constants.DEFAULT_REMOTE_NAME);
+            config.setString(ConfigConstants.CONFIG_BRANCH_SECTION, branch,
+                ConfigConstants.CONFIG_KEY_MERGE, Constants.R_HEADS + branch);
+            config.save();
+        }
+        return repository.findRef(Constants.R_HEADS + branch);
     }
 
     /**
      * Creates a new branch in the Git repository from the specified commit and switches to it.
      * <p>
-     * This method initializes a branch creation command, sets its parameters such as branch name,
-     * force creation, and starting point (provided commit), and executes the command. After
-     * creating the branch, it checks out the specified commit to the newly created branch.
+     * The branch is created or moved to the commit by the ref update of
+     * {@link #checkout(RevCommit, String)}, so no separate branch creation is required.
      */
     protected final void branch(RevCommit commit, String branch)
         throws GitAPIException, IOException {
-        var command = getGit().branchCreate();
-        command.setName(branch);
-        command.setForce(true);
-        command.setStartPoint(commit);
-        command.call();
         checkout(commit, branch);
     }
 
@@ -468,12 +956,13 @@ public class Repository implements AutoCloseable {
      * the repository's exception handling mechanism.
      */
     public final void forEach(Consumer<Repository> consumer) {
-        try (var walk = SubmoduleWalk.forIndex(getGit().getRepository())) {
-            while (walk.next()) {
+        try (var timer = new RepositoryTimer(this, "submodules");
+            var walk = SubmoduleWalk.forIndex(getGit().getRepository())) {
+            while (!timer.isCancelled() && walk.next()) {
                 if (walk.getRepository() != null) {
                     var git = new Git(walk.getRepository());
                     try (var repo = new Repository(git, walk.getObjectId(), this)) {
-                        consumer.accept(repo);
+                        timer.suspend(() -> consumer.accept(repo));
                     }
                 }
             }
@@ -482,6 +971,61 @@ public class Repository implements AutoCloseable {
         }
     }
 
+    /**
+     * Performs the specified action on all submodules of the repository, including the submodules
+     * of submodules.
+     * <p>
+     * Without a parallelism, the action is performed on a submodule after it has been performed on
+     * its own submodules. If the {@link RepositoryOptions} define a parallelism, the actions are
+     * executed concurrently on a bounded pool of threads in no particular order, limiting the
+     * concurrent actions per remote host, so the action has to be thread-safe. Runtime exceptions
+     * of the action are recorded by the repository. The method returns when the action has been
+     * completed on all submodules.
+     */
+    public final void forAll(Consumer<Repository> consumer) {
+        try (var executor = new RepositoryExecutor(getOptions(), this::handleException)) {
+            forAll(consumer, executor);
+        }
+    }
+
+    /**
+     * Submits the specified action for all submodules of the repository to the executor.
+     */
+    private void forAll(Consumer<Repository> consumer, RepositoryExecutor executor) {
+        try (var timer = new RepositoryTimer(this, "submodules");
+            var walk = SubmoduleWalk.forIndex(getGit().getRepository())) {
+            while (!timer.isCancelled() && walk.next()) {
+                if (walk.getRepository() != null) {
+                    var git = new Git(walk.getRepository());
+                    var repo = new Repository(git, walk.getObjectId(), this);
+                    var remote = Repository.getRemoteUrl(walk);
+                    timer.suspend(() -> {
+                        repo.forAll(consumer, executor);
+                        executor.submit(remote, () -> {
+                            try (repo) {
+                                consumer.accept(repo);
+                            }
+                        });
+                    });
+                }
+            }
+        } catch (IOException e) {
+            handleException(e);
+        }
+    }
+
+    /**
+     * Retrieves the remote URL of the current submodule, or <code>null</code> if the URL isn't
+     * configured.
+     */
+    static String getRemoteUrl(SubmoduleWalk walk) {
+        try {
+            return walk.getRemoteUrl();
+        } catch (ConfigInvalidException | IOException e) {
+            return null;
+        }
+    }
+
     /**
      * Releases resources used by the {@link Repository} instance.
      * <p>
@@ -495,6 +1039,12 @@ public class Repository implements AutoCloseable {
     @Override
     public final void close() {
         this.exceptions.forEach(Throwable::printStackTrace);
+        synchronized (this) {
+            if (this.mergeBase != null)
+                this.mergeBase.close();
+        }
         this.git.getRepository().close();
+        if (this.root)
+            this.options.closeJournals();
     }
 }
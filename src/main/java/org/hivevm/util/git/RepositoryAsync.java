@@ -0,0 +1,262 @@
+// Copyright 2024 HiveVM.ORG. All rights reserved.
+// SPDX-License-Identifier: MIT
+
+package org.hivevm.util.git;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.ProgressMonitor;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.submodule.SubmoduleWalk;
+
+/**
+ * The {@link RepositoryAsync} runs the operations of a {@link Repository} on an executor and
+ * completes a {@link CompletableFuture} with a {@link RepositoryResult} per operation. The
+ * exceptions of an operation are recorded in its result instead of the repository, so concurrent
+ * operations don't mix their exceptions. The operations may also be run per submodule, completing
+ * a future for each of them.
+ * <p>
+ * A future that is cancelled or exceeds the timeout is completed at once, while the Git operation
+ * stops once it checks the {@link ProgressMonitor} of its repository, which reports the
+ * cancellation. The thread of the operation is not interrupted, as an interrupt closes the pack
+ * files JGit shares between threads. As the operations block on I/O, an executor with virtual
+ * threads is a good fit. Operations on the same repository are not synchronized, dependent
+ * operations have to be chained by the caller.
+ */
+public final class RepositoryAsync {
+
+    /**
+     * Represents an operation on a {@link Repository}.
+     */
+    @FunctionalInterface
+    public interface Operation<T> {
+
+        T apply(Repository repository) throws GitAPIException, IOException;
+    }
+
+
+    private final Repository repository;
+    private final Executor   executor;
+    private final Duration   timeout;
+
+    /**
+     * Constructs an instance of {@link RepositoryAsync}.
+     */
+    RepositoryAsync(Repository repository, Executor executor, Duration timeout) {
+        this.repository = repository;
+        this.executor = executor;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Fetches the repository and its submodules, see {@link Repository#fetch()}.
+     */
+    public CompletableFuture<RepositoryResult<Void>> fetch() {
+        return submit(r -> {
+            r.fetch();
+            return null;
+        });
+    }
+
+    /**
+     * Pulls the repository and its submodules, see {@link Repository#pull()}.
+     */
+    public CompletableFuture<RepositoryResult<Void>> pull() {
+        return submit(r -> {
+            r.pull();
+            return null;
+        });
+    }
+
+    /**
+     * Pushes the repository and its submodules, see {@link Repository#push()}.
+     */
+    public CompletableFuture<RepositoryResult<List<RepositoryPushResult>>> push() {
+        return submit(Repository::push);
+    }
+
+    /**
+     * Commits the changes of the repository and its submodules, see
+     * {@link Repository#commit(String)}.
+     */
+    public CompletableFuture<RepositoryResult<Void>> commit(String message) {
+        return submit(r -> {
+            r.commit(message);
+            return null;
+        });
+    }
+
+    /**
+     * Tags the repository, see {@link Repository#tag(String)}.
+     */
+    public CompletableFuture<RepositoryResult<Void>> tag(String name) {
+        return submit(r -> {
+            r.tag(name);
+            return null;
+        });
+    }
+
+    /**
+     * Checks out the commits of the submodules, see {@link Repository#checkout()}.
+     */
+    public CompletableFuture<RepositoryResult<Void>> checkout() {
+        return submit(r -> {
+            r.checkout();
+            return null;
+        });
+    }
+
+    /**
+     * Checks out the branch of the repository and its submodules, see
+     * {@link Repository#checkout(String)}.
+     */
+    public CompletableFuture<RepositoryResult<RevCommit>> checkout(String name) {
+        return submit(r -> r.checkout(name));
+    }
+
+    /**
+     * Submits the operation on the repository. The future is completed with the value of the
+     * operation and the exceptions it recorded.
+     */
+    public <T> CompletableFuture<RepositoryResult<T>> submit(Operation<T> operation) {
+        return execute(monitor -> {
+            var exceptions = new ConcurrentLinkedQueue<Throwable>();
+            var git = this.repository.getGit();
+            var repo = new Repository(git, this.repository.getObjectId(), this.repository,
+                exceptions, monitor);
+            return RepositoryAsync.apply(repo, operation, exceptions);
+        });
+    }
+
+    /**
+     * Submits the operation for each submodule of the repository. Each submodule is opened by its
+     * own task, the futures are returned in the order of the submodules.
+     */
+    public <T> List<CompletableFuture<RepositoryResult<T>>> submitEach(Operation<T> operation) {
+        var futures = new ArrayList<CompletableFuture<RepositoryResult<T>>>();
+        var parent = this.repository.getGit().getRepository();
+        try (var walk = SubmoduleWalk.forIndex(parent)) {
+            while (walk.next()) {
+                try (var module = walk.getRepository()) {
+                    if (module == null)
+                        continue;
+                }
+
+                var path = walk.getPath();
+                var oid = walk.getObjectId().copy();
+                futures.add(execute(monitor -> {
+                    try (var module = SubmoduleWalk.getSubmoduleRepository(parent, path)) {
+                        if (module == null)
+                            return null;
+                        var exceptions = new ConcurrentLinkedQueue<Throwable>();
+                        var repo = new Repository(new Git(module), oid, this.repository,
+                            exceptions, monitor);
+                        return RepositoryAsync.apply(repo, operation, exceptions);
+                    }
+                }));
+            }
+        } catch (IOException e) {
+            futures.add(CompletableFuture.failedFuture(e));
+        }
+        return futures;
+    }
+
+    /**
+     * Submits the task to the executor, applying the timeout.
+     */
+    private <T> CompletableFuture<RepositoryResult<T>> execute(Task.Body<T> body) {
+        var task = new Task<>(body);
+        if (this.timeout != null)
+            task.orTimeout(this.timeout.toNanos(), TimeUnit.NANOSECONDS);
+        try {
+            this.executor.execute(task);
+        } catch (RuntimeException e) {
+            task.completeExceptionally(e);
+        }
+        return task;
+    }
+
+    /**
+     * Applies the operation on the repository and collects the result.
+     */
+    private static <T> RepositoryResult<T> apply(Repository repository, Operation<T> operation,
+        ConcurrentLinkedQueue<Throwable> exceptions) {
+        T value = null;
+        try {
+            value = operation.apply(repository);
+        } catch (GitAPIException | IOException e) {
+            exceptions.add(e);
+        }
+        return new RepositoryResult<>(repository.getLocation(), value, List.copyOf(exceptions));
+    }
+
+    /**
+     * The {@link Task} completes itself with the result of its body. The task is the
+     * {@link ProgressMonitor} of its body, which is cancelled once the task is completed before
+     * its body, by a cancellation or timeout.
+     */
+    private static final class Task<T> extends CompletableFuture<RepositoryResult<T>>
+        implements Runnable, ProgressMonitor {
+
+        /**
+         * Provides the result of a task.
+         */
+        @FunctionalInterface
+        private interface Body<T> {
+
+            RepositoryResult<T> call(ProgressMonitor monitor) throws IOException;
+        }
+
+
+        private final Body<T> body;
+
+        /**
+         * Constructs an instance of {@link Task}.
+         */
+        private Task(Body<T> body) {
+            this.body = body;
+        }
+
+        /**
+         * Runs the body of the task, unless the task has already been completed.
+         */
+        @Override
+        public void run() {
+            if (isDone())
+                return;
+            try {
+                complete(this.body.call(this));
+            } catch (IOException | RuntimeException e) {
+                completeExceptionally(e);
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return isDone();
+        }
+
+        @Override
+        public void start(int totalTasks) {}
+
+        @Override
+        public void beginTask(String title, int totalWork) {}
+
+        @Override
+        public void update(int completed) {}
+
+        @Override
+        public void endTask() {}
+
+        @Override
+        public void showDuration(boolean enabled) {}
+    }
+}
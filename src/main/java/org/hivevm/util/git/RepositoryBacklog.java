@@ -0,0 +1,209 @@
+// Copyright 2024 HiveVM.ORG. All rights reserved.
+// SPDX-License-Identifier: MIT
+
+package org.hivevm.util.git;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+/**
+ * The {@link RepositoryBacklog} extracts the backlog keys from the messages of the commits in a
+ * range of the history. The commits are streamed from the walk in batches, the messages of a batch
+ * are matched against the patterns in parallel.
+ * <p>
+ * The key of a match is the group named <code>key</code> of the pattern, the first group or the
+ * whole match. The keys are cached per commit, so repeated queries on overlapping ranges only
+ * match the commits that haven't been seen before. The cache lives as long as the instance, which
+ * may be used concurrently.
+ */
+public final class RepositoryBacklog {
+
+    private static final int BATCH = 256;
+
+
+    private final Repository                  repository;
+    private final List<Pattern>               patterns;
+    private final RepositoryMergeBase         mergeBase;
+    private final Map<ObjectId, List<String>> keys = new ConcurrentHashMap<>();
+
+    /**
+     * Represents a commit of a range and the backlog keys of its message, in the order of the
+     * patterns. The keys are empty if no pattern matches.
+     */
+    public record Entry(ObjectId commit, List<String> keys) {}
+
+    /**
+     * Constructs an instance of {@link RepositoryBacklog}.
+     */
+    RepositoryBacklog(Repository repository, List<Pattern> patterns,
+        RepositoryMergeBase mergeBase) {
+        this.repository = repository;
+        this.patterns = List.copyOf(patterns);
+        this.mergeBase = mergeBase;
+    }
+
+    /**
+     * Streams the commits reachable from <code>to</code>, but not from <code>from</code>, newest
+     * first. Without <code>from</code> the whole history of <code>to</code> is streamed. The names
+     * are object ID hashes or names of refs. The stream has to be closed after use.
+     */
+    public Stream<Entry> stream(String from, String to) throws GitAPIException, IOException {
+        var walk = new RevWalk(this.repository);
+        try {
+            walk.markStart(getCommit(walk, to));
+            if (from != null)
+                walk.markUninteresting(getCommit(walk, from));
+        } catch (GitAPIException | IOException | RuntimeException e) {
+            walk.close();
+            throw e;
+        }
+
+        var spliterator = Spliterators.spliteratorUnknownSize(new Batches(walk),
+            Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(walk::close);
+    }
+
+    /**
+     * Streams the commits of <code>to</code> since its merge base with <code>base</code>, newest
+     * first. The stream is empty if the commits don't have a merge base.
+     */
+    public Stream<Entry> streamSinceMergeBase(String base, String to)
+        throws GitAPIException, IOException {
+        var mergeBase = getMergeBase(base, to);
+        return (mergeBase == null) ? Stream.empty() : stream(mergeBase.name(), to);
+    }
+
+    /**
+     * Gets the distinct backlog keys of the commits reachable from <code>to</code>, but not from
+     * <code>from</code>.
+     */
+    public Set<String> getKeys(String from, String to) throws GitAPIException, IOException {
+        var result = new LinkedHashSet<String>();
+        try (var entries = stream(from, to)) {
+            entries.forEach(e -> result.addAll(e.keys()));
+        }
+        return result;
+    }
+
+    /**
+     * Gets the merge base of the two commits or <code>null</code> if they don't have one. The
+     * merge base is memoized by the {@link RepositoryMergeBase} of the repository.
+     */
+    public ObjectId getMergeBase(String first, String second) throws GitAPIException, IOException {
+        return this.mergeBase.getMergeBase(first, second);
+    }
+
+    /**
+     * Gets the number of commits with cached keys.
+     */
+    public int getCacheSize() {
+        return this.keys.size();
+    }
+
+    /**
+     * Resolves the commit with the name, which is either an object ID hash or the name of a ref.
+     */
+    private RevCommit getCommit(RevWalk walk, String name) throws GitAPIException, IOException {
+        return walk.parseCommit(this.mergeBase.resolve(name));
+    }
+
+    /**
+     * Extracts the backlog keys of the message, without caching them.
+     */
+    List<String> extract(String message) {
+        var result = new ArrayList<String>();
+        for (var pattern : this.patterns) {
+            var matcher = pattern.matcher(message);
+            while (matcher.find()) {
+                var key = RepositoryBacklog.hasKeyGroup(pattern) ? matcher.group("key")
+                    : (matcher.groupCount() > 0) ? matcher.group(1) : matcher.group();
+                if ((key != null) && !result.contains(key))
+                    result.add(key);
+            }
+        }
+        return List.copyOf(result);
+    }
+
+    /**
+     * Returns <code>true</code> if the pattern defines a group named <code>key</code>.
+     */
+    private static boolean hasKeyGroup(Pattern pattern) {
+        return pattern.pattern().contains("(?<key>");
+    }
+
+    /**
+     * Walks the commits in batches and matches the commits of a batch that aren't cached in
+     * parallel.
+     */
+    private class Batches implements Iterator<Entry> {
+
+        private final RevWalk      walk;
+        private final Queue<Entry> entries = new ArrayDeque<>();
+        private boolean            done;
+
+        private Batches(RevWalk walk) {
+            this.walk = walk;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (this.entries.isEmpty() && !this.done)
+                next(RepositoryBacklog.BATCH);
+            return !this.entries.isEmpty();
+        }
+
+        @Override
+        public Entry next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return this.entries.poll();
+        }
+
+        /**
+         * Reads the next batch of commits from the walk. The message of a commit is only kept
+         * until its keys are extracted.
+         */
+        private void next(int size) {
+            var batch = new ArrayList<RevCommit>(size);
+            try {
+                for (var commit = this.walk.next(); commit != null; commit = this.walk.next()) {
+                    batch.add(commit);
+                    if (batch.size() == size)
+                        break;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            this.done = batch.size() < size;
+
+            batch.parallelStream().filter(c -> !RepositoryBacklog.this.keys.containsKey(c))
+                .forEach(c -> RepositoryBacklog.this.keys.put(c.toObjectId(),
+                    extract(c.getFullMessage())));
+            for (var commit : batch) {
+                this.entries.add(new Entry(commit.toObjectId(),
+                    RepositoryBacklog.this.keys.get(commit)));
+                commit.disposeBody();
+            }
+        }
+    }
+}
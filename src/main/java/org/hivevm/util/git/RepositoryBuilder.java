@@ -5,21 +5,41 @@ package org.hivevm.util.git;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import org.eclipse.jgit.api.CloneCommand;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.api.errors.TransportException;
 import org.eclipse.jgit.errors.ConfigInvalidException;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ProgressMonitor;
 import org.eclipse.jgit.lib.TextProgressMonitor;
+import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
 import org.eclipse.jgit.submodule.SubmoduleWalk;
 import org.eclipse.jgit.transport.CredentialsProvider;
+import org.eclipse.jgit.transport.FetchResult;
 import org.eclipse.jgit.transport.FilterSpec;
+import org.eclipse.jgit.transport.GitProtocolConstants;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.RemoteConfig;
 import org.eclipse.jgit.transport.TagOpt;
+import org.eclipse.jgit.transport.URIish;
 import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
+import org.eclipse.jgit.util.FS;
+import org.eclipse.jgit.util.FileUtils;
 import org.hivevm.util.Builder;
 
 
@@ -31,6 +51,9 @@ import org.hivevm.util.Builder;
  */
 public class RepositoryBuilder implements Builder<Repository> {
 
+    static final String PARTIAL_CLONE_FILTER = "partialclonefilter";
+
+
     private final File location;
 
 
@@ -39,10 +62,21 @@ public class RepositoryBuilder implements Builder<Repository> {
     private String username;
     private String password;
     private boolean isBare;
+    private boolean inMemory;
     private FilterSpec filterSpec;
+    private RepositoryStore store;
+
+    private       TagOpt        tagOption;
+    private final List<RefSpec> refSpecs = new ArrayList<>();
 
-    private       ProgressMonitor monitor;
-    private final Set<String>     modules = new LinkedHashSet<>();
+    private       int         depth;
+    private       Instant     shallowSince;
+    private final Set<String> shallowExcludes = new LinkedHashSet<>();
+    private final Set<String> sparse          = new LinkedHashSet<>();
+
+    private       ProgressMonitor   monitor;
+    private final Set<String>       modules = new LinkedHashSet<>();
+    private final RepositoryOptions options = new RepositoryOptions();
 
     /**
      * Constructs a new RepositoryBuilder with the specified repository location.
@@ -85,6 +119,17 @@ public class RepositoryBuilder implements Builder<Repository> {
         return this;
     }
 
+    /**
+     * Keeps the repository in memory, without a work tree and without touching the location. The
+     * branches and tags of the remote are fetched with the {@link FilterSpec} of the builder, by
+     * default without blobs, so the history can be analyzed without any checkout. Submodules are
+     * not supported in memory.
+     */
+    public final RepositoryBuilder setInMemory(boolean inMemory) {
+        this.inMemory = inMemory;
+        return this;
+    }
+
     /**
      * Sets the filter specification for the repository.
      */
@@ -93,6 +138,115 @@ public class RepositoryBuilder implements Builder<Repository> {
         return this;
     }
 
+    /**
+     * Sets the refspecs of the origin, like <code>+refs/heads/main:refs/remotes/origin/main</code>,
+     * that are written to the remote configuration of a clone. The clone and the later fetches
+     * only negotiate and store the matching refs, which keeps them small on a remote with many
+     * branches. Without a tag option, only the tags of the fetched commits are followed; tags can
+     * be restricted by a refspec like <code>+refs/tags/v*:refs/tags/v*</code>. If the refspecs
+     * don't cover the branch of the builder, the refspec of the branch is added. The submodules
+     * keep the default refspecs.
+     */
+    public final RepositoryBuilder setFetchRefSpecs(String... refSpecs) {
+        this.refSpecs.clear();
+        Arrays.stream(refSpecs).map(RefSpec::new).forEach(this.refSpecs::add);
+        return this;
+    }
+
+    /**
+     * Sets the {@link TagOpt} of the origin, that is written to the remote configuration of a
+     * clone. By default all tags are fetched, unless refspecs are defined.
+     */
+    public final RepositoryBuilder setTagOption(TagOpt tagOption) {
+        this.tagOption = tagOption;
+        return this;
+    }
+
+    /**
+     * Limits the history of a clone to the number of commits from the tip of each branch. The
+     * submodules are cloned with the same depth.
+     */
+    public final RepositoryBuilder setDepth(int depth) {
+        this.depth = depth;
+        return this;
+    }
+
+    /**
+     * Limits the history of a clone to the commits after the time. The submodules are cloned with
+     * the same limit.
+     */
+    public final RepositoryBuilder setShallowSince(Instant shallowSince) {
+        this.shallowSince = shallowSince;
+        return this;
+    }
+
+    /**
+     * Excludes the commits reachable from the refs or commits from the history of a clone.
+     */
+    public final RepositoryBuilder setShallowExclude(String... excludes) {
+        this.shallowExcludes.addAll(Arrays.asList(excludes));
+        return this;
+    }
+
+    /**
+     * Restricts the work tree to the directories, using the cone mode of the sparse checkout of
+     * Git. The files at the root of the work tree are checked out as well. Combined with a
+     * {@link FilterSpec} of a partial clone, only the blobs of the directories are fetched.
+     */
+    public final RepositoryBuilder setSparseCheckout(String... directories) {
+        this.sparse.addAll(Arrays.asList(directories));
+        return this;
+    }
+
+    /**
+     * Sets a directory that keeps a shared object store per remote URL. Clones borrow the objects
+     * of the store using the alternates of Git, so they only transfer and store the objects that
+     * are missing in the store. The store itself is fetched at most once an hour.
+     */
+    public final RepositoryBuilder setReferenceStore(File directory) {
+        this.store = (directory == null) ? null : new RepositoryStore(directory);
+        return this;
+    }
+
+    /**
+     * Sets the {@link RepositoryMirror} that serves clones and fetches of the repository and its
+     * submodules. The remote is used to refresh a stale mirror and as push URL.
+     */
+    public final RepositoryBuilder setMirror(RepositoryMirror mirror) {
+        this.options.setMirror(mirror);
+        return this;
+    }
+
+    /**
+     * Sets the {@link RepositoryJournal.Mode} of the journal that records the changed paths of the
+     * work trees, so commits and clean checks only inspect the paths changed since the last
+     * status. By default the whole work tree is inspected.
+     */
+    public final RepositoryBuilder setJournal(RepositoryJournal.Mode mode) {
+        this.options.setJournal(mode);
+        return this;
+    }
+
+    /**
+     * Adds a {@link RepositoryListener}, which receives a {@link RepositoryEvent} with the timing
+     * of each operation on the repository and its submodules, including the clones of the builder.
+     */
+    public final RepositoryBuilder addListener(RepositoryListener listener) {
+        this.options.addListener(listener);
+        return this;
+    }
+
+    /**
+     * Sets the {@link RepositoryProgressListener}, which receives the progress of the tasks of the
+     * clones and the operations on the repository and its submodules. The progress of submodules
+     * that are cloned in parallel is reported concurrently, a
+     * {@link RepositoryProgressAggregator} combines it.
+     */
+    public final RepositoryBuilder setProgressListener(RepositoryProgressListener listener) {
+        this.options.setProgress(listener);
+        return this;
+    }
+
     /**
      * Adds the specified submodules to the repository configuration.
      */
@@ -101,6 +255,33 @@ public class RepositoryBuilder implements Builder<Repository> {
         return this;
     }
 
+    /**
+     * Fetches a submodule only on demand: after the fetch of its superproject, a submodule is only
+     * fetched if a commit recorded by its gitlink in the new commits isn't available yet. By
+     * default every submodule is fetched.
+     */
+    public final RepositoryBuilder setFetchOnDemand(boolean onDemand) {
+        this.options.setOnDemand(onDemand);
+        return this;
+    }
+
+    /**
+     * Sets the number of submodules that are fetched or pulled at once.
+     */
+    public final RepositoryBuilder setParallelism(int parallelism) {
+        this.options.setParallelism(parallelism);
+        return this;
+    }
+
+    /**
+     * Sets the number of concurrent operations allowed per remote host. By default the limit is
+     * defined by the parallelism.
+     */
+    public final RepositoryBuilder setHostLimit(int hostLimit) {
+        this.options.setHostLimit(hostLimit);
+        return this;
+    }
+
     /**
      * Enables monitoring functionality for the repository operations by utilizing a text-based
      * progress monitor.
@@ -137,40 +318,424 @@ public class RepositoryBuilder implements Builder<Repository> {
      * @param location    the target directory where the repository will be cloned
      * @param remote      the URI of the remote repository to clone
      * @param credentials the credentials provider for authenticating with the remote repository
+     * @param monitor     the progress monitor of the clone
      * @return the configured {@link CloneCommand} instance
      */
     private CloneCommand createClone(File location, String remote,
-        CredentialsProvider credentials) {
+        CredentialsProvider credentials, ProgressMonitor monitor) {
         var command = Git.cloneRepository();
         command.setDirectory(location);
         command.setURI(remote).setCredentialsProvider(credentials);
         command.setTagOption(TagOpt.FETCH_TAGS);
         command.setCloneSubmodules(false);
-        command.setProgressMonitor(this.monitor);
+        command.setProgressMonitor(monitor);
+        if (this.depth > 0)
+            command.setDepth(this.depth);
+        if (this.shallowSince != null)
+            command.setShallowSince(this.shallowSince);
+        this.shallowExcludes.forEach(command::addShallowExclude);
         return command;
     }
 
+    /**
+     * Clones the remote repository into the location. The clone is reported to the
+     * {@link RepositoryListener}s.
+     */
+    private Git clone(File location, String remote, CredentialsProvider credentials, String branch,
+        boolean bare, FilterSpec filter, Set<String> sparse) throws GitAPIException, IOException {
+        var directory = bare ? location : new File(location, Constants.DOT_GIT);
+        try (var timer = new RepositoryTimer(this.options, "clone", location, directory,
+            this.monitor)) {
+            try {
+                var git = clone(location, remote, credentials, branch, bare, filter, sparse, timer);
+                timer.setRefs(git.getRepository().getRefDatabase().getRefs().size());
+                return git;
+            } catch (GitAPIException | IOException | RuntimeException e) {
+                timer.setFailed();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Clones the remote repository into the location. If a mirror is defined, the clone is served
+     * from the mirror. If a reference store is defined, the clone borrows the objects of the store.
+     * If sparse-checkout directories are defined, only those are written to the work tree.
+     */
+    private Git clone(File location, String remote, CredentialsProvider credentials, String branch,
+        boolean bare, FilterSpec filter, Set<String> sparse, ProgressMonitor monitor)
+        throws GitAPIException, IOException {
+        var mirror = this.options.getMirror();
+        if (mirror != null)
+            return cloneWithReference(mirror.getStore(), true, location, remote, credentials, branch,
+                bare, filter, sparse, monitor);
+        if ((this.store != null) || isRestricted(location))
+            return cloneWithReference(this.store, false, location, remote, credentials, branch, bare,
+                filter, sparse, monitor);
+
+        var command = createClone(location, remote, credentials, monitor).setBare(bare);
+        if (branch != null)
+            command.setBranch(branch);
+        if (filter != null)
+            command.setTransportConfigCallback(t -> t.setFilterSpec(filter));
+        command.setNoCheckout(!bare && !sparse.isEmpty());
+        var git = command.call();
+        if (!bare && !sparse.isEmpty()) {
+            var repository = git.getRepository();
+            RepositorySparse.write(repository, sparse);
+            try (var walk = new RevWalk(repository)) {
+                var commit = walk.parseCommit(repository.resolve(Constants.HEAD));
+                new RepositoryCheckout(repository, credentials).checkout(commit.getTree(), true);
+            }
+        }
+        return git;
+    }
+
+    /**
+     * Clones the remote repository into the location, using the reference store. The store for the
+     * remote is updated first, then the new repository is initialized with the object directory of
+     * the store as alternate. The fetch from the remote negotiates with the refs of the store, so
+     * only the objects missing in the store are transferred.
+     * <p>
+     * If the store is served, the bare repository of the store is used as fetch URL of the origin
+     * and the remote as push URL. Without a store, the repository is initialized and fetched with
+     * the refspecs and the tag option of the builder.
+     */
+    private Git cloneWithReference(RepositoryStore store, boolean served, File location,
+        String remote, CredentialsProvider credentials, String branch, boolean bare,
+        FilterSpec filter, Set<String> sparse, ProgressMonitor monitor)
+        throws GitAPIException, IOException {
+        var objects = (store == null) ? null : store.update(remote, credentials, monitor);
+        var existed = location.exists();
+        Git git = null;
+        try {
+            init(store, served, location, remote, bare, objects);
+            git = Git.open(location);
+            var command = git.fetch();
+            command.setRemote(Constants.DEFAULT_REMOTE_NAME);
+            command.setCredentialsProvider(credentials);
+            command.setTagOpt(getTagOption(location));
+            command.setProgressMonitor(monitor);
+            if (filter != null)
+                command.setTransportConfigCallback(t -> t.setFilterSpec(filter));
+            if (this.depth > 0)
+                command.setDepth(this.depth);
+            if (this.shallowSince != null)
+                command.setShallowSince(this.shallowSince);
+            this.shallowExcludes.forEach(command::addShallowExclude);
+            var result = command.call();
+
+            var name = (branch == null) ? RepositoryBuilder.getDefaultBranch(result) : branch;
+            var tracking = bare ? Constants.R_HEADS + name
+                : Constants.R_REMOTES + Constants.DEFAULT_REMOTE_NAME + "/" + name;
+            var id = git.getRepository().resolve(tracking);
+            if (id == null)
+                throw new IllegalArgumentException("Branch '" + name + "' is not available");
+            if (!bare && !sparse.isEmpty())
+                RepositorySparse.write(git.getRepository(), sparse);
+            RepositoryBuilder.checkout(git, credentials, name, id, bare);
+            return git;
+        } catch (GitAPIException | IOException | RuntimeException e) {
+            if (git != null)
+                git.close();
+            RepositoryBuilder.cleanup(location, existed);
+            throw e;
+        }
+    }
+
+    /**
+     * Initializes the repository at the location and configures the origin. The object directory
+     * of the store is added as alternate.
+     */
+    private void init(RepositoryStore store, boolean served, File location, String remote,
+        boolean bare, File objects) throws GitAPIException, IOException {
+        try (var init = Git.init().setDirectory(location).setBare(bare).call()) {
+            if (objects != null) {
+                var directory = new File(init.getRepository().getDirectory(), Constants.OBJECTS);
+                var alternates = new File(directory, "info/alternates");
+                alternates.getParentFile().mkdirs();
+                Files.writeString(alternates.toPath(), objects.getAbsolutePath() + "\n");
+            }
+
+            var config = init.getRepository().getConfig();
+            var origin = new RemoteConfig(config, Constants.DEFAULT_REMOTE_NAME);
+            if (served) {
+                origin.addURI(new URIish(store.getLocation(remote).getAbsolutePath()));
+                origin.addPushURI(new URIish(remote));
+            } else
+                origin.addURI(new URIish(remote));
+            getRefSpecs(location, bare).forEach(origin::addFetchRefSpec);
+            if (isRestricted(location) && (this.tagOption != null))
+                origin.setTagOpt(this.tagOption);
+            origin.update(config);
+            config.save();
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * Removes a partially cloned repository, like the clone of JGit. A location that existed
+     * before the clone is kept empty.
+     */
+    private static void cleanup(File location, boolean existed) {
+        try {
+            FileUtils.delete(location,
+                FileUtils.RECURSIVE | FileUtils.SKIP_MISSING | FileUtils.IGNORE_ERRORS);
+            if (existed)
+                location.mkdirs();
+        } catch (IOException e) {
+            // The location is left as it is
+        }
+    }
+
+    /**
+     * Fetches the branches and tags of the remote into a new {@link InMemoryRepository}, using
+     * the filter of the builder or <code>blob:none</code>. The filter is kept in the configuration
+     * of the origin, so later fetches don't transfer the filtered objects either. The name of the
+     * location serves as name of the repository, the file system is required for local remotes.
+     */
+    private Git cloneInMemory(CredentialsProvider credentials) throws GitAPIException, IOException {
+        if (this.remote == null)
+            throw new IllegalArgumentException("Remote is required for an in-memory repository");
+
+        var filter = (this.filterSpec == null) ? FilterSpec.fromFilterLine("blob:none")
+            : this.filterSpec;
+        var repository = new InMemoryRepository.Builder()
+            .setRepositoryDescription(new DfsRepositoryDescription(this.location.getName()))
+            .setFS(FS.DETECTED).build();
+        try {
+            var config = repository.getConfig();
+            var origin = new RemoteConfig(config, Constants.DEFAULT_REMOTE_NAME);
+            origin.addURI(new URIish(this.remote));
+            getRefSpecs(this.location, true).forEach(origin::addFetchRefSpec);
+            if (isRestricted(this.location) && (this.tagOption != null))
+                origin.setTagOpt(this.tagOption);
+            origin.update(config);
+            config.setString(ConfigConstants.CONFIG_REMOTE_SECTION, Constants.DEFAULT_REMOTE_NAME,
+                RepositoryBuilder.PARTIAL_CLONE_FILTER,
+                filter.filterLine().substring(GitProtocolConstants.OPTION_FILTER.length()).strip());
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException(e);
+        }
+
+        var git = Git.wrap(repository);
+        try (var timer = new RepositoryTimer(this.options, "clone", this.location, null,
+            this.monitor)) {
+            var command = git.fetch();
+            command.setRemote(Constants.DEFAULT_REMOTE_NAME);
+            command.setCredentialsProvider(credentials);
+            command.setTagOpt(getTagOption(this.location));
+            command.setProgressMonitor(timer);
+            command.setTransportConfigCallback(t -> t.setFilterSpec(filter));
+            if (this.depth > 0)
+                command.setDepth(this.depth);
+            if (this.shallowSince != null)
+                command.setShallowSince(this.shallowSince);
+            this.shallowExcludes.forEach(command::addShallowExclude);
+            try {
+                var result = command.call();
+                var name = (this.branch == null) ? RepositoryBuilder.getDefaultBranch(result)
+                    : this.branch;
+                if (repository.resolve(Constants.R_HEADS + name) == null)
+                    throw new IllegalArgumentException("Branch '" + name + "' is not available");
+                repository.updateRef(Constants.HEAD).link(Constants.R_HEADS + name);
+                timer.setRefs(result.getTrackingRefUpdates().size());
+            } catch (GitAPIException | IOException | RuntimeException e) {
+                timer.setFailed();
+                throw e;
+            }
+        }
+        return git;
+    }
+
+    /**
+     * Returns <code>true</code> if the refspecs or the tag option of the builder apply to the
+     * clone into the location. They only apply to the repository of the builder, not to its
+     * submodules.
+     */
+    private boolean isRestricted(File location) {
+        return this.location.equals(location)
+            && (!this.refSpecs.isEmpty() || (this.tagOption != null));
+    }
+
+    /**
+     * Gets the fetch refspecs of the origin of a clone into the location: the refspecs of the
+     * builder or all branches. The refspec of the branch of the builder is added, if the refspecs
+     * of the builder don't fetch it to its tracking ref.
+     */
+    private List<RefSpec> getRefSpecs(File location, boolean bare) {
+        if (!isRestricted(location) || this.refSpecs.isEmpty())
+            return List.of(new RefSpec(bare ? "+refs/heads/*:refs/heads/*"
+                : "+refs/heads/*:refs/remotes/" + Constants.DEFAULT_REMOTE_NAME + "/*"));
+        if (this.branch == null)
+            return this.refSpecs;
+
+        var source = Constants.R_HEADS + this.branch;
+        var tracking = bare ? source
+            : Constants.R_REMOTES + Constants.DEFAULT_REMOTE_NAME + "/" + this.branch;
+        for (var refSpec : this.refSpecs) {
+            if (!refSpec.isNegative() && refSpec.matchSource(source)
+                && tracking.equals(refSpec.expandFromSource(source).getDestination()))
+                return this.refSpecs;
+        }
+        var refSpecs = new ArrayList<>(this.refSpecs);
+        refSpecs.add(new RefSpec("+" + source + ":" + tracking));
+        return refSpecs;
+    }
+
+    /**
+     * Gets the {@link TagOpt} of the fetch of a clone into the location, consistent with
+     * {@link Repository#getTagOpt()} for the later fetches.
+     */
+    private TagOpt getTagOption(File location) {
+        if (isRestricted(location) && (this.tagOption != null))
+            return this.tagOption;
+        return (isRestricted(location) && !this.refSpecs.isEmpty()) ? TagOpt.AUTO_FOLLOW
+            : TagOpt.FETCH_TAGS;
+    }
+
+    /**
+     * Retrieves the default branch of the remote from the advertised HEAD.
+     */
+    private static String getDefaultBranch(FetchResult result) {
+        var head = result.getAdvertisedRef(Constants.HEAD);
+        if ((head != null) && head.isSymbolic())
+            return org.eclipse.jgit.lib.Repository.shortenRefName(head.getTarget().getName());
+        if (head != null) {
+            for (var ref : result.getAdvertisedRefs()) {
+                if (ref.getName().startsWith(Constants.R_HEADS)
+                    && head.getObjectId().equals(ref.getObjectId()))
+                    return org.eclipse.jgit.lib.Repository.shortenRefName(ref.getName());
+            }
+        }
+        return Constants.MASTER;
+    }
+
+    /**
+     * Creates the local branch at the commit, links HEAD to it and checks out the working tree. The
+     * branch tracks the branch of the same name on the remote.
+     */
+    private static void checkout(Git git, CredentialsProvider credentials, String branch,
+        ObjectId id, boolean bare) throws IOException {
+        var repository = git.getRepository();
+        if (!bare) {
+            var update = repository.updateRef(Constants.R_HEADS + branch);
+            update.setNewObjectId(id);
+            update.forceUpdate();
+
+            var config = repository.getConfig();
+            config.setString(ConfigConstants.CONFIG_BRANCH_SECTION, branch,
+                ConfigConstants.CONFIG_KEY_REMOTE, Constants.DEFAULT_REMOTE_NAME);
+            config.setString(ConfigConstants.CONFIG_BRANCH_SECTION, branch,
+                ConfigConstants.CONFIG_KEY_MERGE, Constants.R_HEADS + branch);
+            config.save();
+        }
+
+        repository.updateRef(Constants.HEAD).link(Constants.R_HEADS + branch);
+        if (!bare) {
+            try (var walk = new RevWalk(repository)) {
+                var commit = walk.parseCommit(id);
+                new RepositoryCheckout(repository, credentials).checkout(commit.getTree(), true);
+            }
+        }
+    }
+
     /**
      * Retrieves a {@link Git} repository instance. If the repository exists at the specified
      * location, it initializes and returns the repository. If the repository does not exist, it
      * clones the repository from the remote URL using the provided credentials and returns it.
      */
     private Git getRepository(CredentialsProvider credentials) throws GitAPIException, IOException {
+        if (this.inMemory)
+            return cloneInMemory(credentials);
+
         if (this.location.exists()) {
             var builder = new FileRepositoryBuilder();
             builder.findGitDir(this.location);
-            return new Git(builder.build());
+            var git = new Git(builder.build());
+            if (!this.sparse.isEmpty())
+                applySparse(git.getRepository(), credentials);
+            return git;
         }
 
         if (this.remote == null)
             throw new IllegalArgumentException("Remote is required for a checkout");
 
-        var command = createClone(this.location, this.remote, credentials)
-            .setBare(isBare)
-            .setBranch(this.branch);
-        if (this.filterSpec != null)
-            command.setTransportConfigCallback(t -> t.setFilterSpec(this.filterSpec));
-        return command.call();
+        return clone(this.location, this.remote, credentials, this.branch, this.isBare,
+            this.filterSpec, this.sparse);
+    }
+
+    /**
+     * Applies the sparse-checkout directories to an existing repository, if they differ from the
+     * directories of the repository.
+     */
+    private void applySparse(org.eclipse.jgit.lib.Repository repository,
+        CredentialsProvider credentials) throws IOException {
+        if (repository.isBare())
+            return;
+
+        var current = RepositorySparse.read(repository);
+        var sparse = RepositorySparse.write(repository, this.sparse);
+        var head = repository.resolve(Constants.HEAD);
+        if ((head == null)
+            || ((current != null) && current.getDirectories().equals(sparse.getDirectories())))
+            return;
+
+        try (var walk = new RevWalk(repository)) {
+            var commit = walk.parseCommit(head);
+            new RepositoryCheckout(repository, credentials).checkout(commit.getTree(), true);
+        }
+    }
+
+    /**
+     * Clones the submodule into the location and checks out the commit of its gitlink on the
+     * branch of the builder.
+     */
+    private void cloneModule(Repository root, File location, String remote, ObjectId oid,
+        CredentialsProvider credentials) throws GitAPIException, IOException {
+        var module = clone(location, remote, credentials, null, false, null, Set.of());
+        fetchGitlink(module, oid, credentials);
+        try (var repo = new Repository(module, oid, root)) {
+            var rev = repo.getCommit(oid);
+            var branch = (this.branch == null) ? module.getRepository().getBranch() : this.branch;
+            repo.branch(rev, branch);
+        }
+    }
+
+    /**
+     * Fetches the commit of the gitlink, if a shallow clone of the submodule doesn't reach it. The
+     * commit is fetched by its id with the depth of the builder. If the remote doesn't serve it,
+     * the history of the submodule is unshallowed.
+     */
+    private void fetchGitlink(Git module, ObjectId oid, CredentialsProvider credentials)
+        throws GitAPIException, IOException {
+        var database = module.getRepository().getObjectDatabase();
+        if (database.has(oid))
+            return;
+
+        var command = module.fetch();
+        command.setRemote(Constants.DEFAULT_REMOTE_NAME);
+        command.setCredentialsProvider(credentials);
+        command.setTagOpt(TagOpt.NO_TAGS);
+        command.setRefSpecs(new RefSpec(oid.name()));
+        if (this.depth > 0)
+            command.setDepth(this.depth);
+        try {
+            command.call();
+        } catch (TransportException e) {
+            // The remote doesn't allow to fetch the commit by its id
+        }
+
+        if (!database.has(oid) && !database.getShallowCommits().isEmpty()) {
+            command = module.fetch();
+            command.setRemote(Constants.DEFAULT_REMOTE_NAME);
+            command.setCredentialsProvider(credentials);
+            command.setUnshallow(true);
+            command.call();
+        }
+        if (!database.has(oid))
+            throw new RepositoryException("Commit %s is not available".formatted(oid.name()));
     }
 
     /**
@@ -178,31 +743,46 @@ public class RepositoryBuilder implements Builder<Repository> {
      * initializes the main repository and its submodules based on the provided settings, including
      * credentials, branch, and modules. Submodules not explicitly included in the configuration are
      * skipped. The repository's monitoring and cloning behavior is defined by the configured
-     * options within the builder.
+     * options within the builder. The submodules are cloned in parallel, if a parallelism is
+     * defined.
      */
     @Override
     public final Repository build() {
         var credentials = getCredentials();
         try {
             var git = getRepository(credentials);
-            var root = new Repository(git, credentials);
-            try (var walk = SubmoduleWalk.forIndex(git.getRepository())) {
+            var root = new Repository(git, credentials, this.options);
+            if (this.inMemory)
+                return root;
+
+            var exceptions = new ConcurrentLinkedQueue<Exception>();
+            try (var executor = new RepositoryExecutor(this.options, exceptions::add);
+                var walk = SubmoduleWalk.forIndex(git.getRepository())) {
                 while (walk.next()) {
                     if (!this.modules.contains(walk.getModulesPath()))
                         continue;
 
-                    if (walk.getRepository() == null) {
-                        var localPath = new File(git.getRepository().getWorkTree(), walk.getPath());
-                        var command = createClone(localPath, walk.getRemoteUrl(), credentials);
-                        try (var repo = new Repository(command.call(), walk.getObjectId(), root)) {
-                            var rev = repo.getCommit(walk.getObjectId());
-                            repo.branch(rev, this.branch);
-                        }
+                    try (var existing = walk.getRepository()) {
+                        if (existing != null)
+                            continue;
                     }
+
+                    var localPath = new File(git.getRepository().getWorkTree(), walk.getPath());
+                    var remote = walk.getRemoteUrl();
+                    var oid = walk.getObjectId().copy();
+                    executor.submit(remote, () -> {
+                        try {
+                            cloneModule(root, localPath, remote, oid, credentials);
+                        } catch (GitAPIException | IOException e) {
+                            exceptions.add(e);
+                        }
+                    });
                 }
             } catch (ConfigInvalidException e) {
                 throw new IllegalArgumentException(e);
             }
+            if (!exceptions.isEmpty())
+                throw new IllegalArgumentException(exceptions.peek());
             return root;
         } catch (GitAPIException | IOException e) {
             throw new IllegalArgumentException(e);
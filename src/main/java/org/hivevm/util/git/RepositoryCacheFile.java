@@ -0,0 +1,82 @@
+// Copyright 2024 HiveVM.ORG. All rights reserved.
+// SPDX-License-Identifier: MIT
+
+package org.hivevm.util.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The {@link RepositoryCacheFile} updates a cache file in the Git directory, which is shared by
+ * all processes working on the repository. An update holds a lock on a lock file next to the cache
+ * file, so the updates of other processes are serialized. The threads of the process are
+ * serialized by one of a fixed set of locks, because the lock of a file is held by the process.
+ * <p>
+ * The content is written to a unique temporary file, that is moved over the cache file, so readers
+ * never see a partial file.
+ */
+final class RepositoryCacheFile {
+
+    private static final int LIMIT = 64;
+
+    private static final Object[] LOCKS = new Object[RepositoryCacheFile.LIMIT];
+
+    static {
+        for (int i = 0; i < RepositoryCacheFile.LIMIT; i++)
+            RepositoryCacheFile.LOCKS[i] = new Object();
+    }
+
+
+    /**
+     * Updates the cache file while the lock is held.
+     */
+    @FunctionalInterface
+    interface Update {
+
+        void run() throws IOException;
+    }
+
+    /**
+     * The {@link RepositoryCacheFile} serves as a utility class.
+     */
+    private RepositoryCacheFile() {}
+
+    /**
+     * Runs the update of the cache file, while holding the lock of the file. The lock is released
+     * by closing the channel of the lock file.
+     */
+    static void update(File file, Update update) throws IOException {
+        var path = file.getAbsolutePath();
+        synchronized (RepositoryCacheFile.LOCKS[Math.floorMod(path.hashCode(),
+            RepositoryCacheFile.LIMIT)]) {
+            file.getParentFile().mkdirs();
+            var lock = new File(file.getParentFile(), file.getName() + ".lock");
+            try (var channel = FileChannel.open(lock.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE)) {
+                channel.lock();
+                update.run();
+            }
+        }
+    }
+
+    /**
+     * Replaces the content of the cache file. The content is written to a unique temporary file in
+     * the same directory, that is moved over the cache file.
+     */
+    static void write(File file, String text) throws IOException {
+        file.getParentFile().mkdirs();
+        var temp = Files.createTempFile(file.getParentFile().toPath(), file.getName(), ".tmp");
+        try {
+            Files.writeString(temp, text, StandardCharsets.UTF_8);
+            Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
@@ -0,0 +1,382 @@
+// Copyright 2024 HiveVM.ORG. All rights reserved.
+// SPDX-License-Identifier: MIT
+
+package org.hivevm.util.git;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.TreeSet;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.Status;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheCheckout;
+import org.eclipse.jgit.dircache.DirCacheCheckout.CheckoutMetadata;
+import org.eclipse.jgit.dircache.DirCacheEditor;
+import org.eclipse.jgit.dircache.DirCacheEditor.DeletePath;
+import org.eclipse.jgit.dircache.DirCacheEditor.PathEdit;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.errors.CheckoutConflictException;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.CredentialsProvider;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.TagOpt;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.TreeWalk.OperationType;
+import org.eclipse.jgit.treewalk.WorkingTreeIterator;
+import org.eclipse.jgit.treewalk.WorkingTreeOptions;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.eclipse.jgit.util.FileUtils;
+import org.eclipse.jgit.util.RawParseUtils;
+
+/**
+ * The {@link RepositoryCheckout} writes the tree of a commit to the index and the work tree of a
+ * repository. Only the paths that differ between the tree and the index are written, so switching
+ * between two commits costs as much as the difference between them.
+ * <p>
+ * For a sparse checkout, only the paths included by the {@link RepositorySparse} are written to the
+ * work tree. The index holds all paths, the paths outside of the sparse checkout are marked as
+ * assume-valid, so they are neither reported as missing nor removed by a commit. In a partial
+ * clone, only the missing blobs of the included paths are fetched from the origin.
+ * <p>
+ * A checkout doesn't replace local changes: if a path to be updated is modified in the work tree or
+ * an untracked file is in its way, a {@link CheckoutConflictException} is thrown before anything is
+ * written, like the checkout of JGit.
+ */
+final class RepositoryCheckout {
+
+    private final Repository          repository;
+    private final RepositorySparse    sparse;
+    private final CredentialsProvider credentials;
+
+    /**
+     * An update of a single path. The id is <code>null</code> if the path is removed.
+     */
+    private record Update(String path, ObjectId id, FileMode mode, boolean included,
+        CheckoutMetadata metadata) {}
+
+    /**
+     * Constructs an instance of {@link RepositoryCheckout} for the repository, using the sparse
+     * checkout patterns of the repository.
+     */
+    RepositoryCheckout(Repository repository, CredentialsProvider credentials) throws IOException {
+        this.repository = repository;
+        this.sparse = RepositorySparse.read(repository);
+        this.credentials = credentials;
+    }
+
+    /**
+     * Checks out the tree. Only the paths that differ from the index are updated, unless all paths
+     * are verified, which applies changed sparse-checkout patterns to the work tree. Throws a
+     * {@link CheckoutConflictException} if local changes would be replaced.
+     */
+    public final void checkout(RevTree tree, boolean all) throws IOException {
+        update(tree, all ? TreeFilter.ALL : TreeFilter.ANY_DIFF, all, true);
+    }
+
+    /**
+     * Resets the paths to the tree. The index entries and the files of the paths are written, even
+     * if the index already matches the tree.
+     */
+    public final void reset(RevTree tree, Collection<String> paths) throws IOException {
+        if (!paths.isEmpty())
+            update(tree, PathFilterGroup.createFromStrings(paths), false, false);
+    }
+
+    /**
+     * Stashes the changes of the index and the work tree, like the stash of Git, and resets the
+     * changed paths to the HEAD commit. Unlike the stash of JGit, only the changed paths are reset,
+     * so the paths outside of a sparse checkout are not written to the work tree. Returns
+     * <code>null</code> if there are no changes.
+     */
+    public final RevCommit stash(String message, Status status) throws IOException {
+        var paths = new TreeSet<String>();
+        paths.addAll(status.getAdded());
+        paths.addAll(status.getChanged());
+        paths.addAll(status.getRemoved());
+        paths.addAll(status.getModified());
+        paths.addAll(status.getMissing());
+        if (paths.isEmpty())
+            return null;
+
+        var branch = this.repository.getBranch();
+        try (var walk = new RevWalk(this.repository);
+            var inserter = this.repository.newObjectInserter()) {
+            var head = walk.parseCommit(this.repository.resolve(Constants.HEAD));
+            var dirCache = this.repository.readDirCache();
+            var work = DirCache.newInCore();
+            var builder = work.builder();
+            for (int i = 0; i < dirCache.getEntryCount(); i++) {
+                var entry = dirCache.getEntry(i);
+                var path = entry.getPathString();
+                if (status.getMissing().contains(path))
+                    continue;
+                if (status.getModified().contains(path)) {
+                    var file = new File(this.repository.getWorkTree(), path);
+                    var copy = new DirCacheEntry(path);
+                    copy.setFileMode(entry.getFileMode());
+                    copy.setObjectId(inserter.insert(Constants.OBJ_BLOB, Files.readAllBytes(
+                        file.toPath())));
+                    builder.add(copy);
+                } else
+                    builder.add(entry);
+            }
+            builder.finish();
+
+            var text = MessageFormat.format("{0}: {1} {2}", branch, head.abbreviate(7).name(),
+                head.getShortMessage());
+            var index = insert(inserter, dirCache.writeTree(inserter), "index on " + text, head);
+            var stash = insert(inserter, work.writeTree(inserter),
+                (message == null) ? "WIP on " + text : message, head, index);
+            inserter.flush();
+
+            var update = this.repository.updateRef(Constants.R_STASH);
+            update.setNewObjectId(stash);
+            update.setRefLogIdent(new PersonIdent(this.repository));
+            update.setRefLogMessage((message == null) ? "WIP on " + text : message, false);
+            update.setForceRefLog(true);
+            update.forceUpdate();
+
+            reset(head.getTree(), paths);
+            return walk.parseCommit(stash);
+        }
+    }
+
+    /**
+     * Inserts a commit with the tree and the parents.
+     */
+    private ObjectId insert(ObjectInserter inserter, ObjectId tree, String message,
+        ObjectId... parents) throws IOException {
+        var person = new PersonIdent(this.repository);
+        var commit = new CommitBuilder();
+        commit.setTreeId(tree);
+        commit.setParentIds(parents);
+        commit.setAuthor(person);
+        commit.setCommitter(person);
+        commit.setMessage(message);
+        return inserter.insert(commit);
+    }
+
+    /**
+     * Updates the index and the work tree for the paths of the tree matching the filter. If the
+     * paths are verified, the paths that already match are skipped. If the local changes are
+     * protected, the updates are checked for conflicts first.
+     */
+    private void update(RevTree tree, TreeFilter filter, boolean verify, boolean protect)
+        throws IOException {
+        DirCache dirCache = this.repository.lockDirCache();
+        try (var reader = this.repository.newObjectReader();
+            var walk = new TreeWalk(this.repository, reader)) {
+            walk.setRecursive(true);
+            walk.setOperationType(OperationType.CHECKOUT_OP);
+            walk.addTree(tree);
+            walk.addTree(new DirCacheIterator(dirCache));
+            walk.setFilter(filter);
+
+            var updates = new ArrayList<Update>();
+            while (walk.next()) {
+                var path = walk.getPathString();
+                var mode = walk.getFileMode(0);
+                var included = (this.sparse == null) || this.sparse.includes(path);
+                if (mode == FileMode.MISSING) {
+                    updates.add(new Update(path, null, mode, included, null));
+                    continue;
+                }
+
+                if (verify && isCurrent(walk, path, included))
+                    continue;
+
+                var metadata = new CheckoutMetadata(walk.getEolStreamType(OperationType.CHECKOUT_OP),
+                    walk.getFilterCommand(Constants.ATTR_FILTER_TYPE_SMUDGE));
+                updates.add(new Update(path, walk.getObjectId(0), mode, included, metadata));
+            }
+
+            if (protect)
+                checkConflicts(reader, tree, dirCache, updates);
+            fetchMissing(reader, updates);
+
+            var editor = dirCache.editor();
+            for (var update : updates)
+                update(editor, reader, update);
+            editor.commit();
+        } finally {
+            dirCache.unlock();
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the index entry and the work tree of the path already match the
+     * tree and the sparse-checkout patterns.
+     */
+    private boolean isCurrent(TreeWalk walk, String path, boolean included) {
+        if (!walk.idEqual(0, 1) || (walk.getRawMode(0) != walk.getRawMode(1)))
+            return false;
+
+        var entry = walk.getTree(1, DirCacheIterator.class).getDirCacheEntry();
+        var file = new File(this.repository.getWorkTree(), path);
+        if (walk.getFileMode(0) == FileMode.GITLINK)
+            return true;
+        return included ? (!entry.isAssumeValid() && file.exists())
+            : (entry.isAssumeValid() && !file.exists());
+    }
+
+    /**
+     * Checks that the updates don't replace local changes. A path conflicts if its file is
+     * modified against the index, or is untracked, and doesn't already match the tree. Untracked
+     * files in a directory, that is replaced by a file, conflict as well. Ignored files and
+     * submodules don't conflict.
+     */
+    private void checkConflicts(ObjectReader reader, RevTree tree, DirCache dirCache,
+        List<Update> updates) throws IOException {
+        var paths = updates.stream().filter(u -> u.mode() != FileMode.GITLINK).map(Update::path)
+            .toList();
+        if (paths.isEmpty())
+            return;
+
+        var conflicts = new ArrayList<String>();
+        try (var walk = new TreeWalk(this.repository, reader)) {
+            walk.setRecursive(true);
+            walk.setOperationType(OperationType.CHECKOUT_OP);
+            walk.addTree(tree);
+            walk.addTree(new DirCacheIterator(dirCache));
+            walk.addTree(new FileTreeIterator(this.repository));
+            walk.setFilter(PathFilterGroup.createFromStrings(paths));
+            while (walk.next()) {
+                var work = walk.getTree(2, WorkingTreeIterator.class);
+                if ((work == null) || (walk.getFileMode(2) == FileMode.GITLINK)
+                    || (walk.getFileMode(1) == FileMode.GITLINK))
+                    continue;
+
+                var index = walk.getTree(1, DirCacheIterator.class);
+                var changed = (index == null) ? !work.isEntryIgnored()
+                    : work.isModified(index.getDirCacheEntry(), true, reader);
+                if (changed && ((walk.getRawMode(0) == 0) || !walk.idEqual(0, 2)))
+                    conflicts.add(walk.getPathString());
+            }
+        }
+        if (!conflicts.isEmpty())
+            throw new CheckoutConflictException(conflicts.toArray(String[]::new));
+    }
+
+    /**
+     * Fetches the blobs of the included paths that are missing in a partial clone.
+     */
+    private void fetchMissing(ObjectReader reader, List<Update> updates) throws IOException {
+        var missing = new LinkedHashSet<ObjectId>();
+        for (var update : updates) {
+            if (update.included() && (update.id() != null) && (update.mode() != FileMode.GITLINK)
+                && !reader.has(update.id()))
+                missing.add(update.id());
+        }
+        if (missing.isEmpty())
+            return;
+
+        var command = new Git(this.repository).fetch();
+        command.setRemote(Constants.DEFAULT_REMOTE_NAME);
+        command.setCredentialsProvider(this.credentials);
+        command.setTagOpt(TagOpt.NO_TAGS);
+        command.setRefSpecs(missing.stream().map(id -> new RefSpec(id.name())).toList());
+        try {
+            command.call();
+        } catch (GitAPIException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Updates the index and the work tree of a single path.
+     */
+    private void update(DirCacheEditor editor, ObjectReader reader, Update update)
+        throws IOException {
+        var file = new File(this.repository.getWorkTree(), update.path());
+        if (update.id() == null) {
+            editor.add(new DeletePath(update.path()));
+            if (update.included())
+                delete(file);
+            return;
+        }
+
+        var isFile = update.mode() != FileMode.GITLINK;
+        if (update.included() && isFile)
+            write(reader, update, file);
+        else if (update.included())
+            file.mkdirs();
+        else if (isFile)
+            delete(file);
+
+        var length = (update.included() && isFile) ? file.length() : 0;
+        var modified = (update.included() && isFile)
+            ? this.repository.getFS().lastModifiedInstant(file) : null;
+        editor.add(new PathEdit(update.path()) {
+
+            @Override
+            public void apply(DirCacheEntry entry) {
+                entry.setFileMode(update.mode());
+                entry.setObjectId(update.id());
+                entry.setAssumeValid(!update.included());
+                entry.setLength(length);
+                if (modified != null)
+                    entry.setLastModified(modified);
+            }
+        });
+    }
+
+    /**
+     * Writes the content of the blob to the file. A directory in the way only holds files, that
+     * are removed by the checkout or ignored, so it is deleted.
+     */
+    private void write(ObjectReader reader, Update update, File file) throws IOException {
+        file.getParentFile().mkdirs();
+        if (file.isDirectory())
+            FileUtils.delete(file, FileUtils.RECURSIVE);
+
+        var loader = reader.open(update.id(), Constants.OBJ_BLOB);
+        if (update.mode() == FileMode.SYMLINK) {
+            Files.deleteIfExists(file.toPath());
+            this.repository.getFS().createSymLink(file,
+                RawParseUtils.decode(loader.getCachedBytes()));
+            return;
+        }
+
+        var options = this.repository.getConfig().get(WorkingTreeOptions.KEY);
+        try (var output = new FileOutputStream(file)) {
+            DirCacheCheckout.getContent(this.repository, update.path(), update.metadata(), loader,
+                options, output);
+        }
+        if (this.repository.getFS().supportsExecute())
+            this.repository.getFS().setExecute(file, update.mode() == FileMode.EXECUTABLE_FILE);
+    }
+
+    /**
+     * Deletes the file and the parent directories that became empty.
+     */
+    private void delete(File file) throws IOException {
+        if (!file.isFile() && !Files.isSymbolicLink(file.toPath()))
+            return;
+
+        FileUtils.delete(file);
+        var root = this.repository.getWorkTree();
+        for (var dir = file.getParentFile(); !dir.equals(root) && dir.delete();)
+            dir = dir.getParentFile();
+    }
+}
@@ -0,0 +1,178 @@
+// Copyright 2024 HiveVM.ORG. All rights reserved.
+// SPDX-License-Identifier: MIT
+
+package org.hivevm.util.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+/**
+ * The {@link RepositoryCommitCount} calculates the number of commits reachable from a commit, which
+ * is used as build number. The counts are stored in a cache file in the Git directory, keyed by the
+ * commit id.
+ * <p>
+ * For a commit that isn't cached, the history is walked back to the nearest cached ancestor. The
+ * commit count is the count of the ancestor plus the number of commits that are reachable from the
+ * commit but not from the ancestor, so only the new part of the history is walked.
+ * <p>
+ * In a shallow repository the history ends at the shallow commits. If the walk passes a shallow
+ * commit, the count is unknown and has to be resolved by the {@link RepositoryShallow}.
+ */
+final class RepositoryCommitCount {
+
+    private static final String FILE  = "hivevm/commit-count";
+    private static final int    LIMIT = 4096;
+
+
+    private final Repository           repository;
+    private final File                 file;
+    private final Map<ObjectId, Long> counts;
+
+    /**
+     * Constructs an instance of {@link RepositoryCommitCount} and loads the cached counts.
+     */
+    RepositoryCommitCount(Repository repository) {
+        this.repository = repository;
+        this.file = (repository.getDirectory() == null) ? null
+            : new File(repository.getDirectory(), RepositoryCommitCount.FILE);
+        this.counts = new LinkedHashMap<>();
+        load();
+    }
+
+    /**
+     * Gets the number of commits reachable from the commit, including the commit itself. Returns
+     * -1 if the history of the commit is cut by a shallow commit.
+     */
+    public final long count(AnyObjectId commit) throws IOException {
+        var count = this.counts.get(commit.toObjectId());
+        if (count != null)
+            return count;
+
+        try (var walk = new RevWalk(this.repository)) {
+            walk.setRetainBody(false);
+            return count(walk, commit);
+        }
+    }
+
+    /**
+     * Gets the number of commits reachable from the commit, using the walk. The walk is reset, so
+     * the commits it has parsed before are reused when several commits are counted.
+     */
+    public final long count(RevWalk walk, AnyObjectId commit) throws IOException {
+        var id = commit.toObjectId();
+        var count = this.counts.get(id);
+        if (count != null)
+            return count;
+
+        var shallow = this.repository.getObjectDatabase().getShallowCommits();
+        RevCommit ancestor = null;
+        long walked = 0;
+        walk.reset();
+        walk.markStart(walk.parseCommit(id));
+        for (var rev : walk) {
+            if (this.counts.containsKey(rev.getId())) {
+                ancestor = rev;
+                break;
+            }
+            if (shallow.contains(rev))
+                return -1;
+            walked++;
+        }
+
+        if (ancestor != null) {
+            walk.reset();
+            walk.markStart(walk.parseCommit(id));
+            walk.markUninteresting(ancestor);
+            walked = this.counts.get(ancestor.getId());
+            for (var rev : walk) {
+                if (shallow.contains(rev))
+                    return -1;
+                walked++;
+            }
+        }
+
+        store(id, walked);
+        return walked;
+    }
+
+    /**
+     * Puts the count of a commit that has been resolved elsewhere into the cache.
+     */
+    public final void put(AnyObjectId commit, long count) {
+        store(commit.toObjectId(), count);
+    }
+
+    /**
+     * Loads the cached counts from the file. Invalid lines are ignored.
+     */
+    private void load() {
+        if ((this.file == null) || !this.file.exists())
+            return;
+
+        try {
+            for (var line : Files.readAllLines(this.file.toPath(), StandardCharsets.UTF_8)) {
+                var index = line.indexOf(' ');
+                if ((index > 0) && ObjectId.isId(line.substring(0, index))) {
+                    var id = ObjectId.fromString(line.substring(0, index));
+                    this.counts.put(id, Long.parseLong(line.substring(index + 1).trim()));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // An unreadable cache is recalculated
+        }
+    }
+
+    /**
+     * Stores the count of the commit. The cache file is appended, once the limit is reached it is
+     * rewritten with the most recent counts. A failure is ignored, the count is calculated again
+     * on the next request.
+     */
+    private void store(ObjectId id, long count) {
+        this.counts.put(id, count);
+        if (this.file == null)
+            return;
+
+        try {
+            if (this.counts.size() <= RepositoryCommitCount.LIMIT) {
+                this.file.getParentFile().mkdirs();
+                var line = String.format("%s %d%n", id.name(), count);
+                Files.writeString(this.file.toPath(), line, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                return;
+            }
+            RepositoryCacheFile.update(this.file, this::compact);
+        } catch (IOException | RuntimeException e) {
+            // An unwritable cache is recalculated
+        }
+    }
+
+    /**
+     * Rewrites the cache file with the most recent counts, while the file is locked by the
+     * {@link RepositoryCacheFile}. The file is loaded again, so the counts other processes have
+     * appended in the meantime are kept.
+     */
+    private void compact() throws IOException {
+        load();
+        var iter = this.counts.keySet().iterator();
+        while (this.counts.size() > (RepositoryCommitCount.LIMIT / 2)) {
+            iter.next();
+            iter.remove();
+        }
+
+        var text = this.counts.entrySet().stream()
+            .map(e -> String.format("%s %d%n", e.getKey().name(), e.getValue()))
+            .collect(Collectors.joining());
+        RepositoryCacheFile.write(this.file, text);
+    }
+}
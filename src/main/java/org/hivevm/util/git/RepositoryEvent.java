@@ -0,0 +1,15 @@
+// Copyright 2024 HiveVM.ORG. All rights reserved.
+// SPDX-License-Identifier: MIT
+
+package org.hivevm.util.git;
+
+import java.io.File;
+import java.time.Duration;
+
+/**
+ * Represents the timing of a single operation on a repository or submodule, which is reported to
+ * the {@link RepositoryListener}s. The bytes are measured by the growth of the pack files, the
+ * objects by the objects received from the remote. Operations without a transfer report zero.
+ */
+public record RepositoryEvent(String operation, File location, Duration duration, long bytes,
+    long objects, int refs, boolean failed) {}
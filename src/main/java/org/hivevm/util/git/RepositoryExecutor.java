@@ -0,0 +1,121 @@
+// Copyright 2024 HiveVM.ORG. All rights reserved.
+// SPDX-License-Identifier: MIT
+
+package org.hivevm.util.git;
+
+import java.net.URISyntaxException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import org.eclipse.jgit.transport.URIish;
+
+/**
+ * The {@link RepositoryExecutor} runs operations on repositories using a bounded pool of threads.
+ * The number of operations that talk to the same remote host at once is limited separately, so
+ * that a superproject with many submodules on one server doesn't exceed the connections allowed by
+ * that server.
+ * <p>
+ * With a parallelism of 1 no threads are created and the operations are executed immediately on
+ * the calling thread. Tasks may submit further tasks, {@link #close()} waits until all of them are
+ * completed.
+ */
+class RepositoryExecutor implements AutoCloseable {
+
+    private static final String LOCAL = "";
+
+
+    private final ExecutorService        executor;
+    private final int                    hostLimit;
+    private final Map<String, Semaphore> hosts;
+    private final Phaser                 phaser;
+    private final Consumer<Exception>    handler;
+
+    /**
+     * Constructs an instance of {@link RepositoryExecutor}.
+     */
+    RepositoryExecutor(RepositoryOptions options, Consumer<Exception> handler) {
+        var parallelism = options.getParallelism();
+        this.executor = (parallelism > 1) ? Executors.newFixedThreadPool(parallelism) : null;
+        this.hostLimit = options.getHostLimit();
+        this.hosts = new ConcurrentHashMap<>();
+        this.phaser = new Phaser(1);
+        this.handler = handler;
+    }
+
+    /**
+     * Submits the task for the repository with the remote URL. The remote is used to limit the
+     * concurrent operations per host.
+     */
+    public final void submit(String remote, Runnable task) {
+        if (this.executor == null) {
+            run(task);
+            return;
+        }
+
+        this.phaser.register();
+        this.executor.execute(() -> {
+            var semaphore = this.hosts.computeIfAbsent(RepositoryExecutor.getHost(remote),
+                h -> new Semaphore(this.hostLimit));
+            try {
+                semaphore.acquire();
+                try {
+                    run(task);
+                } finally {
+                    semaphore.release();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                this.handler.accept(e);
+            } finally {
+                this.phaser.arriveAndDeregister();
+            }
+        });
+    }
+
+    /**
+     * Waits until all submitted tasks, including the tasks submitted by them, are completed.
+     */
+    public final void await() {
+        this.phaser.arriveAndAwaitAdvance();
+    }
+
+    /**
+     * Waits for the submitted tasks and releases the threads of the executor.
+     */
+    @Override
+    public final void close() {
+        await();
+        if (this.executor != null)
+            this.executor.shutdown();
+    }
+
+    /**
+     * Runs the task and passes any runtime exception to the exception handler.
+     */
+    private void run(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            this.handler.accept(e);
+        }
+    }
+
+    /**
+     * Gets the host name of the remote URL. Local repositories and URLs that can't be parsed share
+     * a common limit.
+     */
+    private static String getHost(String remote) {
+        if (remote == null)
+            return RepositoryExecutor.LOCAL;
+        try {
+            var host = new URIish(remote).getHost();
+            return (host == null) ? RepositoryExecutor.LOCAL : host.toLowerCase();
+        } catch (URISyntaxException e) {
+            return RepositoryExecutor.LOCAL;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+// Copyright 2024 HiveVM.ORG. All rights reserved.
+// SPDX-License-Identifier: MIT
+
+package org.hivevm.util.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.SubmoduleConfig.FetchRecurseSubmodulesMode;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.submodule.SubmoduleWalk;
+import org.eclipse.jgit.transport.FetchResult;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+
+/**
+ * The {@link RepositoryFetchPlan} fetches a repository and all of its submodules, so that every
+ * repository is fetched exactly once.
+ * <p>
+ * A repository is fetched before its submodules. The commits received by the fetch are scanned for
+ * the gitlinks of the submodules, which defines the commits each submodule requires. Commits that
+ * are reachable from a remote-tracking ref before the fetch have been scanned already and are
+ * skipped. After a submodule has been fetched, the commit of its gitlink in the index is requested
+ * by its object id if it is still missing. The gitlinks of the new commits are requested as well,
+ * but a commit the remote doesn't serve anymore is skipped. The submodules are fetched on the
+ * {@link RepositoryExecutor}, so they are processed in parallel if a parallelism is configured.
+ * <p>
+ * On demand, a submodule is only fetched if one of its required commits is missing: the commit of
+ * its gitlink in the index or in the commits received by the superproject. An unchanged submodule
+ * is skipped together with its own submodules.
+ */
+class RepositoryFetchPlan {
+
+    private final RepositoryExecutor executor;
+    private final boolean            onDemand;
+    private final Set<File>          fetched;
+
+    /**
+     * Constructs an instance of {@link RepositoryFetchPlan}.
+     */
+    RepositoryFetchPlan(RepositoryExecutor executor, boolean onDemand) {
+        this.executor = executor;
+        this.onDemand = onDemand;
+        this.fetched = ConcurrentHashMap.newKeySet();
+    }
+
+    /**
+     * Fetches the repository and submits the fetch of its submodules to the executor. The required
+     * object ids are fetched explicitly, if they are not available after the fetch. A bare
+     * repository, like a repository in memory, has no submodules and is fetched only.
+     */
+    public final void fetch(Repository repository, Set<ObjectId> required) {
+        fetch(repository, required, Set.of());
+    }
+
+    /**
+     * Fetches the repository and submits the fetch of its submodules to the executor. The optional
+     * object ids are fetched if possible, a failure to fetch them is ignored.
+     */
+    private void fetch(Repository repository, Set<ObjectId> required, Set<ObjectId> optional) {
+        if (repository.getGit().getRepository().isBare()) {
+            repository.fetchRepository();
+            return;
+        }
+
+        var directory = repository.getGit().getRepository().getDirectory().getAbsoluteFile();
+        if (!this.fetched.add(directory))
+            return;
+
+        var known = RepositoryFetchPlan.getTrackingTips(repository);
+        var result = repository.fetchRepository();
+        fetchMissing(repository, required, true);
+        fetchMissing(repository, optional, false);
+
+        var modules = new ArrayList<Module>();
+        var timer = new RepositoryTimer(repository, "submodules");
+        try (var walk = SubmoduleWalk.forIndex(repository.getGit().getRepository())) {
+            while (walk.next()) {
+                if (walk.getRepository() != null) {
+                    var git = new Git(walk.getRepository());
+                    var module = new Repository(git, walk.getObjectId(), repository);
+                    modules.add(new Module(walk.getPath(), Repository.getRemoteUrl(walk), module));
+                }
+            }
+        } catch (IOException e) {
+            timer.setFailed();
+            repository.handleException(e);
+        } finally {
+            timer.close();
+        }
+
+        var gitlinks = getGitlinks(repository, result, modules, known);
+        for (var module : modules) {
+            var ids = Set.of(module.repository().getObjectId().toObjectId());
+            var links = gitlinks.getOrDefault(module.path(), Collections.emptySet());
+            this.executor.submit(module.remote(), () -> {
+                try (var repo = module.repository()) {
+                    if (!this.onDemand || RepositoryFetchPlan.isMissing(repo, ids)
+                        || RepositoryFetchPlan.isMissing(repo, links))
+                        fetch(repo, ids, links);
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if any of the object ids isn't available in the repository.
+     */
+    private static boolean isMissing(Repository repository, Set<ObjectId> ids) {
+        var database = repository.getGit().getRepository().getObjectDatabase();
+        try {
+            for (var id : ids) {
+                if (!database.has(id))
+                    return true;
+            }
+            return false;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Gets the commits of the remote-tracking refs, which are known before the fetch.
+     */
+    private static Set<ObjectId> getTrackingTips(Repository repository) {
+        var tips = new HashSet<ObjectId>();
+        try {
+            for (var ref : repository.getGit().getRepository().getRefDatabase()
+                .getRefsByPrefix(Constants.R_REMOTES)) {
+                if (ref.getObjectId() != null)
+                    tips.add(ref.getObjectId());
+            }
+        } catch (IOException e) {
+            repository.handleException(e);
+        }
+        return tips;
+    }
+
+    /**
+     * Fetches the object ids that are not available in the repository. A required object id that
+     * can't be fetched is reported, any other object id is skipped.
+     */
+    private void fetchMissing(Repository repository, Set<ObjectId> ids, boolean required) {
+        var database = repository.getGit().getRepository().getObjectDatabase();
+        var specs = new ArrayList<RefSpec>();
+        try {
+            for (var id : ids) {
+                if (!database.has(id))
+                    specs.add(new RefSpec(id.name()));
+            }
+            if (specs.isEmpty())
+                return;
+
+            var command = repository.getGit().fetch();
+            command.setCredentialsProvider(repository.getCredentials());
+            command.setRecurseSubmodules(FetchRecurseSubmodulesMode.NO);
+            command.setRefSpecs(specs);
+            command.call();
+            if (!required)
+                return;
+
+            for (var id : ids) {
+                if (!database.has(id))
+                    repository.handleException(new RepositoryException(
+                        String.format("Commit %s is not available in '%s'", id.name(),
+                            repository.getLocation())));
+            }
+        } catch (GitAPIException | IOException e) {
+            if (required)
+                repository.handleException(e);
+        }
+    }
+
+    /**
+     * Collects the gitlinks of the submodules recorded in the commits received by the fetch. The
+     * commits reachable from the known commits have been scanned by an earlier fetch.
+     */
+    private static Map<String, Set<ObjectId>> getGitlinks(Repository repository,
+        FetchResult result, List<Module> modules, Set<ObjectId> known) {
+        var gitlinks = new HashMap<String, Set<ObjectId>>();
+        if ((result == null) || modules.isEmpty() || result.getTrackingRefUpdates().isEmpty())
+            return gitlinks;
+
+        var paths = modules.stream().map(Module::path).toList();
+        var git = repository.getGit().getRepository();
+        try (var walk = new RevWalk(git); var tree = new TreeWalk(git)) {
+            for (var id : known) {
+                var commit = RepositoryFetchPlan.parseCommit(walk, id);
+                if (commit != null)
+                    walk.markUninteresting(commit);
+            }
+            for (var update : result.getTrackingRefUpdates()) {
+                if (update.getLocalName().startsWith(Constants.R_TAGS))
+                    continue;
+                if (!ObjectId.zeroId().equals(update.getOldObjectId()))
+                    walk.markUninteresting(walk.parseCommit(update.getOldObjectId()));
+                if (!ObjectId.zeroId().equals(update.getNewObjectId()))
+                    walk.markStart(walk.parseCommit(update.getNewObjectId()));
+            }
+
+            tree.setRecursive(true);
+            tree.setFilter(PathFilterGroup.createFromStrings(paths));
+            for (var commit : walk) {
+                tree.reset(commit.getTree());
+                while (tree.next()) {
+                    if (tree.getFileMode(0) == FileMode.GITLINK)
+                        gitlinks.computeIfAbsent(tree.getPathString(), p -> new HashSet<>())
+                            .add(tree.getObjectId(0));
+                }
+            }
+        } catch (IOException e) {
+            repository.handleException(e);
+        }
+        return gitlinks;
+    }
+
+    /**
+     * Parses the commit of the object id, or returns <code>null</code> if it isn't a commit that is
+     * available in the repository.
+     */
+    private static RevCommit parseCommit(RevWalk walk, ObjectId id) {
+        try {
+            return walk.parseCommit(id);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Represents a submodule that is planned for a fetch.
+     */
+    private record Module(String path, String remote, Repository repository) {}
+}
@@ -0,0 +1,219 @@
+// Copyright 2024 HiveVM.ORG. All rights reserved.
+// SPDX-License-Identifier: MIT
+
+package org.hivevm.util.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * The {@link RepositoryGroup} manages a number of independent repositories, which are defined by a
+ * manifest of locations, remotes and branches. The operations of the group run on all repositories
+ * at once, using a bounded pool of threads that limits the concurrent operations per remote host.
+ * The result of each repository is reported separately, a failing repository doesn't stop the
+ * others.
+ * <p>
+ * The manifest is a text file with a line per repository: the location, the remote and optionally
+ * the branch, separated by whitespace. Relative locations are resolved against the directory of
+ * the manifest. Empty lines and lines starting with <code>#</code> are ignored.
+ */
+public final class RepositoryGroup implements AutoCloseable {
+
+    /**
+     * Represents a repository of the manifest. The branch may be <code>null</code> to use the
+     * default branch of the remote.
+     */
+    public record Entry(File location, String remote, String branch) {}
+
+
+    private final List<Entry>                       entries;
+    private final RepositoryOptions                 options;
+    private final Repository[]                      repositories;
+    private final List<Consumer<RepositoryBuilder>> configurers = new ArrayList<>();
+
+    /**
+     * Constructs an instance of {@link RepositoryGroup} for the entries. The parallelism defines
+     * the number of repositories that are processed at once, the host limit the number of
+     * concurrent operations per remote host.
+     */
+    public RepositoryGroup(Collection<Entry> entries, int parallelism, int hostLimit) {
+        this.entries = List.copyOf(entries);
+        this.options = new RepositoryOptions();
+        this.options.setParallelism(parallelism);
+        this.options.setHostLimit(hostLimit);
+        this.repositories = new Repository[this.entries.size()];
+    }
+
+    /**
+     * Reads the entries of the manifest.
+     */
+    public static List<Entry> readManifest(File manifest) throws IOException {
+        var directory = manifest.getAbsoluteFile().getParentFile();
+        var entries = new ArrayList<Entry>();
+        for (var line : Files.readAllLines(manifest.toPath(), StandardCharsets.UTF_8)) {
+            line = line.strip();
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+
+            var fields = line.split("\\s+");
+            if (fields.length < 2)
+                throw new IOException("Invalid manifest entry '%s' in '%s'".formatted(line,
+                    manifest));
+            var location = new File(fields[0]);
+            entries.add(new Entry(location.isAbsolute() ? location : new File(directory, fields[0]),
+                fields[1], (fields.length > 2) ? fields[2] : null));
+        }
+        return entries;
+    }
+
+    /**
+     * Gets the entries of the group.
+     */
+    public List<Entry> getEntries() {
+        return this.entries;
+    }
+
+    /**
+     * Adds a configuration that is applied to the {@link RepositoryBuilder} of each repository,
+     * like the credentials, a mirror or the submodules.
+     */
+    public RepositoryGroup configure(Consumer<RepositoryBuilder> configurer) {
+        this.configurers.add(configurer);
+        return this;
+    }
+
+    /**
+     * Builds the repositories of the group, cloning those that don't exist yet. The result of a
+     * repository that can't be built reports the exception, the other operations skip it.
+     */
+    public List<RepositoryResult<Repository>> build() {
+        return run(index -> {
+            var entry = this.entries.get(index);
+            try {
+                var builder = new RepositoryBuilder(entry.location()).setRemote(entry.remote());
+                if (entry.branch() != null)
+                    builder.setBranch(entry.branch());
+                this.configurers.forEach(c -> c.accept(builder));
+                var repository = builder.build();
+                synchronized (this.repositories) {
+                    if (this.repositories[index] != null)
+                        this.repositories[index].close();
+                    this.repositories[index] = repository;
+                }
+                return new RepositoryResult<>(entry.location(), repository, List.of());
+            } catch (RuntimeException e) {
+                return new RepositoryResult<>(entry.location(), null, List.of(e));
+            }
+        });
+    }
+
+    /**
+     * Fetches the repositories of the group, see {@link Repository#fetch()}.
+     */
+    public List<RepositoryResult<Void>> fetch() {
+        return apply(r -> {
+            r.fetch();
+            return null;
+        });
+    }
+
+    /**
+     * Pulls the repositories of the group, see {@link Repository#pull()}.
+     */
+    public List<RepositoryResult<Void>> pull() {
+        return apply(r -> {
+            r.pull();
+            return null;
+        });
+    }
+
+    /**
+     * Tags the repositories of the group, see {@link Repository#tag(String)}.
+     */
+    public List<RepositoryResult<Void>> tag(String name) {
+        return apply(r -> {
+            r.tag(name);
+            return null;
+        });
+    }
+
+    /**
+     * Pushes the repositories of the group, see {@link Repository#push()}.
+     */
+    public List<RepositoryResult<List<RepositoryPushResult>>> push() {
+        return apply(Repository::push);
+    }
+
+    /**
+     * Applies the operation on each repository that has been built. The exceptions recorded by the
+     * operation are reported with the result of the repository.
+     */
+    public <T> List<RepositoryResult<T>> apply(Function<Repository, T> operation) {
+        return run(index -> {
+            Repository repository;
+            synchronized (this.repositories) {
+                repository = this.repositories[index];
+            }
+
+            var location = this.entries.get(index).location();
+            if (repository == null)
+                return new RepositoryResult<>(location, null, List.of(new RepositoryException(
+                    "Repository '%s' has not been built".formatted(location))));
+
+            T value = null;
+            var exceptions = new ArrayList<Throwable>();
+            try {
+                value = operation.apply(repository);
+            } catch (RuntimeException e) {
+                exceptions.add(e);
+            }
+            exceptions.addAll(repository.getExceptions());
+            return new RepositoryResult<>(location, value, exceptions);
+        });
+    }
+
+    /**
+     * Closes the repositories of the group.
+     */
+    @Override
+    public void close() {
+        synchronized (this.repositories) {
+            for (int i = 0; i < this.repositories.length; i++) {
+                if (this.repositories[i] != null)
+                    this.repositories[i].close();
+                this.repositories[i] = null;
+            }
+        }
+    }
+
+    /**
+     * Runs the task for the index of each entry on the {@link RepositoryExecutor} and waits until
+     * all of them are completed. The results are returned in the order of the entries.
+     */
+    private <T> List<RepositoryResult<T>> run(Function<Integer, RepositoryResult<T>> task) {
+        @SuppressWarnings("unchecked")
+        var results = (RepositoryResult<T>[]) new RepositoryResult<?>[this.entries.size()];
+        try (var executor = new RepositoryExecutor(this.options, e -> {})) {
+            for (int i = 0; i < this.entries.size(); i++) {
+                var index = i;
+                executor.submit(this.entries.get(i).remote(), () -> {
+                    var result = task.apply(index);
+                    synchronized (results) {
+                        results[index] = result;
+                    }
+                });
+            }
+        }
+        synchronized (results) {
+            return Arrays.asList(results);
+        }
+    }
+}
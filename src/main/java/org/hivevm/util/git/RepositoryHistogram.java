@@ -0,0 +1,125 @@
+// Copyright 2024 HiveVM.ORG. All rights reserved.
+// SPDX-License-Identifier: MIT
+
+package org.hivevm.util.git;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The {@link RepositoryHistogram} aggregates the durations of the {@link RepositoryEvent}s per
+ * operation in memory, so the percentiles of the operations can be tracked over many builds.
+ * <p>
+ * The durations are recorded in microseconds into logarithmic buckets with 16 linear sub-buckets
+ * per power of two, so a percentile is reported with an error of less than 7%. The histogram has a
+ * fixed size per operation and may be updated concurrently.
+ */
+public final class RepositoryHistogram implements RepositoryListener {
+
+    private static final int SUB_BUCKETS = 16;
+    private static final int SUB_BITS    = 4;
+    private static final int BUCKETS     = (64 - RepositoryHistogram.SUB_BITS + 1)
+        * RepositoryHistogram.SUB_BUCKETS;
+
+
+    private final Map<String, AtomicLongArray> histograms = new ConcurrentHashMap<>();
+
+    /**
+     * Records the duration of the event for its operation.
+     */
+    @Override
+    public void onEvent(RepositoryEvent event) {
+        var buckets = this.histograms.computeIfAbsent(event.operation(),
+            o -> new AtomicLongArray(RepositoryHistogram.BUCKETS));
+        var micros = Math.max(0, event.duration().toNanos() / 1000);
+        buckets.incrementAndGet(RepositoryHistogram.getBucket(micros));
+    }
+
+    /**
+     * Gets the operations that have been recorded.
+     */
+    public Set<String> getOperations() {
+        return new TreeSet<>(this.histograms.keySet());
+    }
+
+    /**
+     * Gets the number of events recorded for the operation.
+     */
+    public long getCount(String operation) {
+        var buckets = this.histograms.get(operation);
+        long count = 0;
+        for (int i = 0; (buckets != null) && (i < buckets.length()); i++)
+            count += buckets.get(i);
+        return count;
+    }
+
+    /**
+     * Gets the duration that the percentage of the events of the operation doesn't exceed, e.g. 50
+     * for the median or 99 for the 99th percentile. Returns {@link Duration#ZERO} if no event has
+     * been recorded for the operation.
+     */
+    public Duration getPercentile(String operation, double percentile) {
+        var count = getCount(operation);
+        if (count == 0)
+            return Duration.ZERO;
+
+        var rank = Math.max(1, (long) Math.ceil(count * Math.min(100, percentile) / 100));
+        var buckets = this.histograms.get(operation);
+        long total = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            total += buckets.get(i);
+            if (total >= rank)
+                return Duration.ofNanos(RepositoryHistogram.getValue(i) * 1000);
+        }
+        return Duration.ofNanos(RepositoryHistogram.getValue(buckets.length() - 1) * 1000);
+    }
+
+    /**
+     * Removes the events of all operations.
+     */
+    public void reset() {
+        this.histograms.clear();
+    }
+
+    /**
+     * Gets the count, the median and the 99th percentile of each operation.
+     */
+    @Override
+    public String toString() {
+        var builder = new StringBuilder();
+        for (var operation : getOperations()) {
+            builder.append("%s: count=%d, p50=%d ms, p99=%d ms\n".formatted(operation,
+                getCount(operation), getPercentile(operation, 50).toMillis(),
+                getPercentile(operation, 99).toMillis()));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Gets the index of the bucket for the value.
+     */
+    private static int getBucket(long value) {
+        if (value < RepositoryHistogram.SUB_BUCKETS)
+            return (int) value;
+        var exponent = 63 - Long.numberOfLeadingZeros(value);
+        var shift = exponent - RepositoryHistogram.SUB_BITS;
+        var sub = (int) (value >>> shift) & (RepositoryHistogram.SUB_BUCKETS - 1);
+        return ((shift + 1) * RepositoryHistogram.SUB_BUCKETS) + sub;
+    }
+
+    /**
+     * Gets the highest value of the bucket.
+     */
+    private static long getValue(int bucket) {
+        if (bucket < RepositoryHistogram.SUB_BUCKETS)
+            return bucket;
+        var shift = (bucket / RepositoryHistogram.SUB_BUCKETS) - 1;
+        var sub = bucket % RepositoryHistogram.SUB_BUCKETS;
+        var lower = (long) (RepositoryHistogram.SUB_BUCKETS + sub) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,578 @@
+// Copyright 2024 HiveVM.ORG. All rights reserved.
+// SPDX-License-Identifier: MIT
+
+package org.hivevm.util.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.api.Status;
+import org.eclipse.jgit.ignore.IgnoreNode;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.CoreConfig;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.treewalk.WorkingTreeIterator;
+
+/**
+ * The {@link RepositoryJournal} records the paths of a work tree that changed since the last
+ * snapshot, so the status of a repository only has to inspect those paths. A snapshot is taken
+ * whenever the status of the work tree is known, the paths that are dirty at that time stay in the
+ * journal until the next snapshot.
+ * <p>
+ * The journal is kept in one of the following {@link Mode}s:
+ * <ul>
+ * <li>{@link Mode#SNAPSHOT} stores the modification time and size of each file in the Git
+ * directory and compares the work tree against it. Only the file attributes are read once per
+ * status, no content is hashed. Ignored directories without tracked files, like the output of a
+ * build, are skipped with the ignore rules of Git. A snapshot appends the changed entries to the
+ * journal, which is rewritten when the appended entries outgrow the work tree.</li>
+ * <li>{@link Mode#WATCH} registers the directories of the work tree with a {@link WatchService}
+ * and collects the events, which suits long-living processes. The journal has to be closed.
+ * Before the events are used, a probe in the Git directory is created and its event is awaited,
+ * so all modifications made before are reported.</li>
+ * </ul>
+ * The changes are unknown if HEAD, the index or the exclude files have been modified by another
+ * process, if the watch service lost events or if no snapshot has been taken yet. The full status
+ * is required then. A changed <code>.gitignore</code> reports its whole directory as changed, as
+ * the files it ignores may have changed. Submodules are always reported as changed, their status
+ * is resolved by Git.
+ */
+public final class RepositoryJournal implements AutoCloseable {
+
+    /**
+     * Defines how the changes of the work tree are recorded.
+     */
+    public enum Mode {
+        NONE,
+        SNAPSHOT,
+        WATCH
+    }
+
+
+    private static final String   JOURNAL       = "hivevm/journal";
+    private static final String   PROBE         = "hivevm/watch";
+    private static final Duration PROBE_TIMEOUT = Duration.ofSeconds(1);
+
+
+    private final Repository           repository;
+    private final Path                 workTree;
+    private final WatchService         watcher;
+    private final Path                 probe;
+    private final Map<WatchKey, Path>  keys     = new HashMap<>();
+    private final Set<String>          changed  = new HashSet<>();
+    private final Set<String>          modules  = new HashSet<>();
+    private final Set<String>          pending  = new HashSet<>();
+    private final Set<String>          drained  = new HashSet<>();
+    private final Set<String>          racy     = new HashSet<>();
+    private       Map<String, String>  entries;
+    private       Map<String, String>  stats;
+    private       String               state;
+    private       String               current;
+    private       long                 length;
+    private       int                  lines;
+    private       boolean              overflow;
+
+    /**
+     * Constructs an instance of {@link RepositoryJournal} for the work tree of the repository.
+     */
+    RepositoryJournal(Repository repository, Mode mode) throws IOException {
+        this.repository = repository;
+        this.workTree = repository.getWorkTree().toPath();
+        this.watcher = (mode == Mode.WATCH) ? FileSystems.getDefault().newWatchService() : null;
+        this.probe = new File(repository.getDirectory(), RepositoryJournal.PROBE).toPath();
+        if (this.watcher != null) {
+            Files.createDirectories(this.probe);
+            this.keys.put(this.probe.register(this.watcher, StandardWatchEventKinds.ENTRY_CREATE),
+                this.probe);
+            register(this.workTree, true);
+        }
+    }
+
+    /**
+     * Gets the paths that changed since the last snapshot, including the paths that were dirty at
+     * the snapshot, or <code>null</code> if the changes are unknown.
+     */
+    synchronized Set<String> getChanged() throws IOException {
+        if (this.watcher == null)
+            return getChangedOnDisk();
+
+        drain();
+        this.drained.clear();
+        this.drained.addAll(this.changed);
+        if (this.overflow || (this.state == null) || !this.state.equals(getState()))
+            return null;
+
+        var paths = new HashSet<>(this.changed);
+        paths.addAll(this.pending);
+        paths.addAll(this.modules);
+        return RepositoryJournal.addIgnored(paths);
+    }
+
+    /**
+     * Takes a snapshot of the work tree after its status has been resolved. The status has to
+     * cover at least the paths returned by {@link #getChanged()}.
+     */
+    synchronized void snapshot(Status status) throws IOException {
+        var dirty = new HashSet<String>();
+        dirty.addAll(status.getAdded());
+        dirty.addAll(status.getChanged());
+        dirty.addAll(status.getRemoved());
+        dirty.addAll(status.getMissing());
+        dirty.addAll(status.getModified());
+        dirty.addAll(status.getConflicting());
+        dirty.addAll(status.getUntracked());
+        dirty.addAll(status.getUntrackedFolders());
+
+        if (this.watcher == null) {
+            snapshotOnDisk(dirty);
+            return;
+        }
+
+        this.changed.removeAll(this.drained);
+        this.drained.clear();
+        this.pending.clear();
+        this.pending.addAll(dirty);
+        this.state = getState();
+        this.overflow = false;
+    }
+
+    /**
+     * Closes the watch service of the journal.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.watcher != null)
+            this.watcher.close();
+    }
+
+    /**
+     * Gets the state of HEAD, the index and the exclude files, which invalidates the journal if it
+     * is changed by another process.
+     */
+    private String getState() throws IOException {
+        var head = this.repository.exactRef(Constants.HEAD);
+        var target = (head == null) ? "" : head.getTarget().getName();
+        var id = ((head == null) || (head.getObjectId() == null)) ? ""
+            : head.getObjectId().name();
+        var index = this.repository.getIndexFile();
+        var state = new StringBuilder("%s %s %d %d".formatted(target, id, index.lastModified(),
+            index.length()));
+        for (var file : getExcludeFiles())
+            state.append(" %d %d".formatted(file.lastModified(), file.length()));
+        return state.toString();
+    }
+
+    /**
+     * Gets the exclude files of the repository, the excludes file of the configuration and the
+     * <code>info/exclude</code> file, like the {@link WorkingTreeIterator} of JGit.
+     */
+    private List<File> getExcludeFiles() {
+        var files = new ArrayList<File>();
+        var fs = this.repository.getFS();
+        var path = this.repository.getConfig().get(CoreConfig.KEY).getExcludesFile();
+        if (path != null)
+            files.add(path.startsWith("~/") ? fs.resolve(fs.userHome(), path.substring(2))
+                : fs.resolve(null, path));
+        files.add(fs.resolve(this.repository.getCommonDirectory(), Constants.INFO_EXCLUDE));
+        return files;
+    }
+
+    /**
+     * Gets the file of the journal in the Git directory.
+     */
+    private File getFile() {
+        return new File(this.repository.getDirectory(), RepositoryJournal.JOURNAL);
+    }
+
+    /**
+     * Compares the attributes of the files in the work tree with the attributes stored by the last
+     * snapshot.
+     */
+    private Set<String> getChangedOnDisk() throws IOException {
+        stat();
+        if ((this.entries == null) || !this.current.equals(this.state))
+            return null;
+
+        var paths = new HashSet<>(this.pending);
+        paths.addAll(this.modules);
+        this.stats.forEach((path, stat) -> {
+            if (!stat.equals(this.entries.get(path)))
+                paths.add(path);
+        });
+        for (var path : this.entries.keySet())
+            if (!this.stats.containsKey(path))
+                paths.add(path);
+        return RepositoryJournal.addIgnored(paths);
+    }
+
+    /**
+     * Adds the directories of the changed <code>.gitignore</code> files to the paths, because the
+     * files they ignore may have changed. Returns <code>null</code> if the <code>.gitignore</code>
+     * of the work tree changed.
+     */
+    private static Set<String> addIgnored(Set<String> paths) {
+        for (var path : List.copyOf(paths)) {
+            if (!path.equals(Constants.DOT_GIT_IGNORE)
+                && !path.endsWith("/" + Constants.DOT_GIT_IGNORE))
+                continue;
+            var index = path.lastIndexOf('/');
+            if (index < 0)
+                return null;
+            paths.add(path.substring(0, index));
+        }
+        return paths;
+    }
+
+    /**
+     * Reads the journal and the attributes of the files in the work tree. Files that are modified
+     * while they are read can't be told apart from later modifications, so they are racy.
+     */
+    private void stat() throws IOException {
+        read();
+
+        var started = System.currentTimeMillis() - 1000;
+        this.current = getState();
+        this.stats = new HashMap<>();
+        this.racy.clear();
+        this.modules.clear();
+        walk((path, attributes) -> {
+            var modified = attributes.lastModifiedTime().toMillis();
+            if (modified >= started)
+                this.racy.add(path);
+            this.stats.put(path, modified + " " + attributes.size());
+        }, this.modules);
+    }
+
+    /**
+     * Reads the entries, the dirty paths and the state of the last snapshot from the journal. Each
+     * snapshot ends with its state, so the entries of an incomplete snapshot are ignored.
+     */
+    private void read() throws IOException {
+        this.entries = null;
+        this.state = null;
+        this.pending.clear();
+        this.length = -1;
+
+        var file = getFile().toPath();
+        if (!Files.exists(file))
+            return;
+
+        var content = Files.readAllBytes(file);
+        var lines = new String(content, StandardCharsets.UTF_8).split("\n", -1);
+        var entries = new HashMap<String, String>();
+        var segment = new ArrayList<String>();
+        for (int i = 0; i < (lines.length - 1); i++) {
+            var line = lines[i];
+            if (!line.startsWith("state ")) {
+                segment.add(line);
+                continue;
+            }
+
+            this.pending.clear();
+            for (var entry : segment) {
+                if (entry.startsWith("P "))
+                    this.pending.add(entry.substring(2));
+                else if (entry.startsWith("R "))
+                    entries.remove(entry.substring(2));
+                else if (entry.startsWith("F ")) {
+                    var index = entry.indexOf(' ', entry.indexOf(' ', 2) + 1);
+                    entries.put(entry.substring(index + 1), entry.substring(2, index));
+                }
+            }
+            this.state = line.substring(6);
+            segment.clear();
+        }
+
+        if (this.state == null) {
+            this.pending.clear();
+            return;
+        }
+        this.entries = entries;
+        this.lines = lines.length - 1;
+        if (segment.isEmpty() && lines[lines.length - 1].isEmpty())
+            this.length = content.length;
+    }
+
+    /**
+     * Stores the attributes of the files in the work tree. Only the entries that changed since the
+     * last snapshot are appended, the journal isn't written at all if nothing changed.
+     */
+    private void snapshotOnDisk(Set<String> dirty) throws IOException {
+        if (this.stats == null)
+            stat();
+        dirty.addAll(this.racy);
+
+        var updates = new ArrayList<String>();
+        if (this.entries != null) {
+            this.stats.forEach((path, stat) -> {
+                if (!stat.equals(this.entries.get(path)))
+                    updates.add("F %s %s".formatted(stat, path));
+            });
+            for (var path : this.entries.keySet())
+                if (!this.stats.containsKey(path))
+                    updates.add("R " + path);
+            if (updates.isEmpty() && dirty.equals(this.pending) && this.current.equals(this.state))
+                return;
+        }
+
+        var lines = new ArrayList<String>();
+        dirty.forEach(p -> lines.add("P " + p));
+
+        var file = getFile();
+        var appended = this.lines + lines.size() + updates.size() + 1;
+        if ((this.length >= 0) && (file.length() == this.length)
+            && (appended <= (2 * (this.stats.size() + dirty.size() + 1)))) {
+            lines.addAll(updates);
+            lines.add("state " + this.current);
+            Files.write(file.toPath(), lines, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+            return;
+        }
+
+        this.stats.forEach((path, stat) -> lines.add("F %s %s".formatted(stat, path)));
+        lines.add("state " + this.current);
+
+        file.getParentFile().mkdirs();
+        var temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        Files.write(temp.toPath(), lines, StandardCharsets.UTF_8);
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Visits the files of the work tree, skipping the Git directory. The directories of nested
+     * repositories are added to the modules instead of being visited. Ignored directories are
+     * skipped, unless they contain tracked files.
+     */
+    private void walk(FileConsumer consumer, Set<String> modules) throws IOException {
+        var excludes = getExcludes();
+        var ignores = new ArrayDeque<Map.Entry<Path, IgnoreNode>>();
+        var tracked = new HashSet<String>();
+        Files.walkFileTree(this.workTree, new SimpleFileVisitor<>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes)
+                throws IOException {
+                if (dir.equals(RepositoryJournal.this.workTree)) {
+                    ignores.push(Map.entry(dir, RepositoryJournal.getIgnores(dir)));
+                    return FileVisitResult.CONTINUE;
+                }
+                if (Files.exists(dir.resolve(Constants.DOT_GIT), LinkOption.NOFOLLOW_LINKS)) {
+                    modules.add(getPath(dir));
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                if (dir.getFileName().toString().equals(Constants.DOT_GIT))
+                    return FileVisitResult.SKIP_SUBTREE;
+                if (isIgnored(dir, ignores, excludes)) {
+                    if (tracked.isEmpty())
+                        tracked.addAll(getTrackedDirectories());
+                    if (!tracked.contains(getPath(dir)))
+                        return FileVisitResult.SKIP_SUBTREE;
+                }
+                ignores.push(Map.entry(dir, RepositoryJournal.getIgnores(dir)));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                if (e != null)
+                    throw e;
+                ignores.pop();
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (!file.getParent().equals(RepositoryJournal.this.workTree)
+                    || !file.getFileName().toString().equals(Constants.DOT_GIT))
+                    consumer.accept(getPath(file), attributes);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Returns <code>true</code> if the directory is ignored. Like the {@link WorkingTreeIterator}
+     * of JGit, the rules of the nearest <code>.gitignore</code> take precedence, the exclude files
+     * apply last.
+     */
+    private boolean isIgnored(Path dir, Deque<Map.Entry<Path, IgnoreNode>> ignores,
+        IgnoreNode excludes) {
+        for (var ignore : ignores) {
+            var path = ignore.getKey().relativize(dir).toString().replace(File.separatorChar, '/');
+            var ignored = ignore.getValue().checkIgnored(path, true);
+            if (ignored != null)
+                return ignored;
+        }
+        return Boolean.TRUE.equals(excludes.checkIgnored(getPath(dir), true));
+    }
+
+    /**
+     * Reads the rules of the exclude files.
+     */
+    private IgnoreNode getExcludes() throws IOException {
+        var excludes = new IgnoreNode();
+        for (var file : getExcludeFiles()) {
+            if (file.isFile()) {
+                try (var input = Files.newInputStream(file.toPath())) {
+                    excludes.parse(file.getPath(), input);
+                }
+            }
+        }
+        return excludes;
+    }
+
+    /**
+     * Reads the rules of the <code>.gitignore</code> in the directory.
+     */
+    private static IgnoreNode getIgnores(Path dir) throws IOException {
+        var ignores = new IgnoreNode();
+        var file = dir.resolve(Constants.DOT_GIT_IGNORE);
+        if (Files.isRegularFile(file)) {
+            try (var input = Files.newInputStream(file)) {
+                ignores.parse(file.toString(), input);
+            }
+        }
+        return ignores;
+    }
+
+    /**
+     * Gets the directories that contain tracked files, according to the index.
+     */
+    private Set<String> getTrackedDirectories() throws IOException {
+        var directories = new HashSet<String>();
+        var dirCache = this.repository.readDirCache();
+        for (int i = 0; i < dirCache.getEntryCount(); i++) {
+            var path = dirCache.getEntry(i).getPathString();
+            for (int index = path.lastIndexOf('/'); index > 0;
+                index = path.lastIndexOf('/', index - 1)) {
+                if (!directories.add(path.substring(0, index)))
+                    break;
+            }
+        }
+        return directories;
+    }
+
+    /**
+     * Registers the directory and its sub directories with the watch service. The contents of a
+     * directory that has been created after the journal was started are recorded as changed.
+     */
+    private void register(Path directory, boolean root) throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes)
+                throws IOException {
+                if (!dir.equals(RepositoryJournal.this.workTree)
+                    && (dir.getFileName().toString().equals(Constants.DOT_GIT)
+                        || Files.exists(dir.resolve(Constants.DOT_GIT), LinkOption.NOFOLLOW_LINKS))) {
+                    if (!dir.getFileName().toString().equals(Constants.DOT_GIT))
+                        RepositoryJournal.this.modules.add(getPath(dir));
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+
+                var key = dir.register(RepositoryJournal.this.watcher,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+                RepositoryJournal.this.keys.put(key, dir);
+                if (!root && !dir.equals(directory))
+                    RepositoryJournal.this.changed.add(getPath(dir));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (!root)
+                    RepositoryJournal.this.changed.add(getPath(file));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Collects the pending events of the watch service. The events are delivered asynchronously,
+     * so a probe file is created in the Git directory and the events are collected until the
+     * event of the probe arrives. If the probe isn't reported in time, the changes are unknown.
+     */
+    private void drain() throws IOException {
+        var probe = Files.createTempFile(this.probe, "probe", null);
+
+        var deadline = System.nanoTime() + RepositoryJournal.PROBE_TIMEOUT.toNanos();
+        var probed = false;
+        while (!probed) {
+            WatchKey key;
+            try {
+                var timeout = deadline - System.nanoTime();
+                key = (timeout > 0) ? this.watcher.poll(timeout, TimeUnit.NANOSECONDS) : null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                key = null;
+            }
+            if (key == null) {
+                this.overflow = true;
+                break;
+            }
+
+            var directory = this.keys.get(key);
+            for (var event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    this.overflow = true;
+                    continue;
+                }
+
+                var path = directory.resolve((Path) event.context());
+                if (path.equals(probe)) {
+                    probed = true;
+                    continue;
+                }
+                if (directory.equals(this.probe) || (path.getParent().equals(this.workTree)
+                    && path.getFileName().toString().equals(Constants.DOT_GIT)))
+                    continue;
+
+                this.changed.add(getPath(path));
+                if ((event.kind() == StandardWatchEventKinds.ENTRY_CREATE)
+                    && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS))
+                    register(path, false);
+            }
+            if (!key.reset())
+                this.keys.remove(key);
+        }
+        Files.delete(probe);
+    }
+
+    /**
+     * Gets the path of the file relative to the work tree, using the separators of Git.
+     */
+    private String getPath(Path file) {
+        return this.workTree.relativize(file).toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Accepts a file of the work tree with its attributes.
+     */
+    private interface FileConsumer {
+
+        void accept(String path, BasicFileAttributes attributes);
+    }
+}
@@ -0,0 +1,18 @@
+// Copyright 2024 HiveVM.ORG. All rights reserved.
+// SPDX-License-Identifier: MIT
+
+package org.hivevm.util.git;
+
+/**
+ * The {@link RepositoryListener} receives a {@link RepositoryEvent} for each operation of a
+ * {@link Repository} or {@link RepositoryBuilder} on a repository or submodule. The events of
+ * submodules that are processed in parallel are reported concurrently.
+ */
+@FunctionalInterface
+public interface RepositoryListener {
+
+    /**
+     * Called after an operation has been completed or has failed.
+     */
+    void onEvent(RepositoryEvent event);
+}
@@ -0,0 +1,142 @@
+// Copyright 2024 HiveVM.ORG. All rights reserved.
+// SPDX-License-Identifier: MIT
+
+package org.hivevm.util.git;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+
+/**
+ * The {@link RepositoryMergeBase} calculates the merge bases of two commits and memoizes them by
+ * the pair of commits. Names are resolved to their commits on each request, so a cached result is
+ * only replaced when one of the tips moves. The merge bases of a pair don't depend on the order
+ * of the commits.
+ * <p>
+ * The calculations share a single {@link RevWalk}, which is reset for each pair. The most recently
+ * used pairs are kept. The service may be used concurrently, the calculations are serialized.
+ */
+public final class RepositoryMergeBase implements AutoCloseable {
+
+    private static final int LIMIT = 1024;
+
+
+    private final Repository                repository;
+    private final RevWalk                   walk;
+    private final Map<Pair, List<ObjectId>> cache;
+
+    /**
+     * Constructs an instance of {@link RepositoryMergeBase}.
+     */
+    RepositoryMergeBase(Repository repository) {
+        this.repository = repository;
+        this.walk = new RevWalk(repository);
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Pair, List<ObjectId>> eldest) {
+                return size() > RepositoryMergeBase.LIMIT;
+            }
+        };
+    }
+
+    /**
+     * Gets the best merge base of the commits with the names or <code>null</code> if they don't
+     * have a common ancestor. The names are object ID hashes or names of refs.
+     */
+    public ObjectId getMergeBase(String first, String second) throws GitAPIException, IOException {
+        return getMergeBase(resolve(first), resolve(second));
+    }
+
+    /**
+     * Gets the best merge base of the commits or <code>null</code> if they don't have a common
+     * ancestor.
+     */
+    public ObjectId getMergeBase(AnyObjectId first, AnyObjectId second) throws IOException {
+        var bases = getMergeBases(first, second);
+        return bases.isEmpty() ? null : bases.get(0);
+    }
+
+    /**
+     * Gets all merge bases of the commits, the best one first.
+     */
+    public synchronized List<ObjectId> getMergeBases(AnyObjectId first, AnyObjectId second)
+        throws IOException {
+        var pair = Pair.of(first, second);
+        var bases = this.cache.get(pair);
+        if (bases != null)
+            return bases;
+
+        this.walk.reset();
+        this.walk.setRevFilter(RevFilter.MERGE_BASE);
+        this.walk.markStart(this.walk.parseCommit(first));
+        this.walk.markStart(this.walk.parseCommit(second));
+        var result = new ArrayList<ObjectId>();
+        for (var commit = this.walk.next(); commit != null; commit = this.walk.next())
+            result.add(commit.toObjectId());
+
+        bases = List.copyOf(result);
+        this.cache.put(pair, bases);
+        return bases;
+    }
+
+    /**
+     * Gets the number of cached pairs.
+     */
+    public synchronized int getCacheSize() {
+        return this.cache.size();
+    }
+
+    /**
+     * Removes all cached pairs.
+     */
+    public synchronized void clear() {
+        this.cache.clear();
+    }
+
+    /**
+     * Releases the {@link RevWalk} of the service.
+     */
+    @Override
+    public synchronized void close() {
+        this.walk.close();
+        this.cache.clear();
+    }
+
+    /**
+     * Resolves the commit with the name, which is either an object ID hash or the name of a ref.
+     * Annotated tags are peeled to their commits.
+     */
+    ObjectId resolve(String name) throws GitAPIException, IOException {
+        if (ObjectId.isId(name))
+            return ObjectId.fromString(name);
+
+        var ref = this.repository.findRef(name);
+        if ((ref == null) || (ref.getObjectId() == null))
+            throw new RepositoryException("Revision '%s' is not available".formatted(name));
+        var peeled = this.repository.getRefDatabase().peel(ref);
+        return (peeled.getPeeledObjectId() == null) ? ref.getObjectId()
+            : peeled.getPeeledObjectId();
+    }
+
+    /**
+     * Represents an unordered pair of commits.
+     */
+    private record Pair(ObjectId first, ObjectId second) {
+
+        private static Pair of(AnyObjectId first, AnyObjectId second) {
+            return (first.compareTo(second) <= 0) ? new Pair(first.toObjectId(), second.toObjectId())
+                : new Pair(second.toObjectId(), first.toObjectId());
+        }
+    }
+}
@@ -0,0 +1,74 @@
+// Copyright 2024 HiveVM.ORG. All rights reserved.
+// SPDX-License-Identifier: MIT
+
+package org.hivevm.util.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.ProgressMonitor;
+import org.eclipse.jgit.transport.CredentialsProvider;
+
+/**
+ * The {@link RepositoryMirror} keeps a bare mirror per remote URL in a local directory. Clones and
+ * fetches of a {@link Repository} built with the mirror are served from the local mirror, the
+ * remote is only contacted when the mirror is older than the maximum age. Pushes still go to the
+ * remote.
+ * <p>
+ * The refresh of a mirror is serialized within the process and between processes. Requests that
+ * find a stale mirror wait for a running refresh and use its result, so any number of jobs starting
+ * at once cause a single fetch from the remote.
+ */
+public class RepositoryMirror {
+
+    private final RepositoryStore store;
+
+    /**
+     * Constructs an instance of {@link RepositoryMirror} in the directory. A mirror is refreshed if
+     * its last fetch is older than the maximum age.
+     */
+    public RepositoryMirror(File directory, Duration maxAge) {
+        this.store = new RepositoryStore(directory, maxAge);
+    }
+
+    /**
+     * Gets the {@link RepositoryStore} that holds the mirrors.
+     */
+    final RepositoryStore getStore() {
+        return this.store;
+    }
+
+    /**
+     * Gets the location of the bare mirror for the remote URL.
+     */
+    public final File getLocation(String remote) {
+        return this.store.getLocation(remote);
+    }
+
+    /**
+     * Gets the time of the last refresh of the mirror, or <code>null</code> if the remote has never
+     * been mirrored.
+     */
+    public final Instant getFetched(String remote) {
+        return this.store.getFetched(remote);
+    }
+
+    /**
+     * Returns <code>true</code> if the mirror for the remote URL is older than the maximum age.
+     */
+    public final boolean isStale(String remote) {
+        return this.store.isStale(remote);
+    }
+
+    /**
+     * Refreshes the mirror for the remote URL if it is stale, creating it if it doesn't exist.
+     * Returns the location of the mirror.
+     */
+    public final File update(String remote, CredentialsProvider credentials,
+        ProgressMonitor monitor) throws GitAPIException, IOException {
+        this.store.update(remote, credentials, monitor);
+        return getLocation(remote);
+    }
+}
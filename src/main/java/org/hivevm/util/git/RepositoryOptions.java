@@ -0,0 +1,174 @@
+// Copyright 2024 HiveVM.ORG. All rights reserved.
+// SPDX-License-Identifier: MIT
+
+package org.hivevm.util.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * The {@link RepositoryOptions} holds the runtime settings of a {@link Repository}. The options are
+ * defined by the {@link RepositoryBuilder} and shared between a repository and all of its
+ * submodules.
+ */
+final class RepositoryOptions {
+
+    private int              parallelism = 1;
+    private int              hostLimit;
+    private RepositoryMirror mirror;
+    private RepositoryJournal.Mode journal = RepositoryJournal.Mode.NONE;
+    private RepositoryProgressListener progress;
+    private boolean                    onDemand;
+
+    private final Map<File, RepositoryJournal> journals  = new ConcurrentHashMap<>();
+    private final List<RepositoryListener>     listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Gets the number of repositories that are processed at once. A value of 1 processes the
+     * submodules one after another.
+     */
+    int getParallelism() {
+        return this.parallelism;
+    }
+
+    /**
+     * Sets the number of repositories that are processed at once.
+     */
+    void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Gets the number of concurrent operations allowed per remote host. If no limit is defined,
+     * the parallelism is used.
+     */
+    int getHostLimit() {
+        return (this.hostLimit < 1) ? this.parallelism : this.hostLimit;
+    }
+
+    /**
+     * Sets the number of concurrent operations allowed per remote host.
+     */
+    void setHostLimit(int hostLimit) {
+        this.hostLimit = hostLimit;
+    }
+
+    /**
+     * Returns <code>true</code> if a submodule is only fetched, when a commit recorded by its
+     * gitlinks isn't available.
+     */
+    boolean isOnDemand() {
+        return this.onDemand;
+    }
+
+    /**
+     * Sets whether a submodule is only fetched on demand.
+     */
+    void setOnDemand(boolean onDemand) {
+        this.onDemand = onDemand;
+    }
+
+    /**
+     * Gets the {@link RepositoryMirror} the repositories are served from, or <code>null</code> if
+     * they are fetched from their remotes.
+     */
+    RepositoryMirror getMirror() {
+        return this.mirror;
+    }
+
+    /**
+     * Sets the {@link RepositoryMirror} the repositories are served from.
+     */
+    void setMirror(RepositoryMirror mirror) {
+        this.mirror = mirror;
+    }
+
+    /**
+     * Gets the {@link RepositoryListener}s that receive the timings of the operations.
+     */
+    List<RepositoryListener> getListeners() {
+        return this.listeners;
+    }
+
+    /**
+     * Adds a {@link RepositoryListener} that receives the timings of the operations.
+     */
+    void addListener(RepositoryListener listener) {
+        this.listeners.add(listener);
+    }
+
+    /**
+     * Gets the {@link RepositoryProgressListener} that receives the progress of the operations, or
+     * <code>null</code> if the progress isn't reported.
+     */
+    RepositoryProgressListener getProgress() {
+        return this.progress;
+    }
+
+    /**
+     * Sets the {@link RepositoryProgressListener} that receives the progress of the operations.
+     */
+    void setProgress(RepositoryProgressListener progress) {
+        this.progress = progress;
+    }
+
+    /**
+     * Gets the {@link RepositoryJournal.Mode} that is used to resolve the status of the work trees.
+     */
+    RepositoryJournal.Mode getJournal() {
+        return this.journal;
+    }
+
+    /**
+     * Sets the {@link RepositoryJournal.Mode} that is used to resolve the status of the work trees.
+     */
+    void setJournal(RepositoryJournal.Mode journal) {
+        this.journal = (journal == null) ? RepositoryJournal.Mode.NONE : journal;
+    }
+
+    /**
+     * Gets the {@link RepositoryJournal} of the work tree of the repository, or <code>null</code>
+     * if no journal is used. A watching journal is kept until the options are closed, as it has to
+     * observe the work tree between the operations.
+     */
+    RepositoryJournal getJournal(Repository repository) throws IOException {
+        if ((this.journal == RepositoryJournal.Mode.NONE) || repository.isBare())
+            return null;
+        if (this.journal == RepositoryJournal.Mode.SNAPSHOT)
+            return new RepositoryJournal(repository, this.journal);
+
+        var workTree = repository.getWorkTree().getAbsoluteFile();
+        var journal = this.journals.get(workTree);
+        if (journal == null) {
+            synchronized (this.journals) {
+                journal = this.journals.get(workTree);
+                if (journal == null) {
+                    journal = new RepositoryJournal(repository, this.journal);
+                    this.journals.put(workTree, journal);
+                }
+            }
+        }
+        return journal;
+    }
+
+    /**
+     * Closes the watching journals of the work trees.
+     */
+    void closeJournals() {
+        synchronized (this.journals) {
+            for (var journal : this.journals.values()) {
+                try {
+                    journal.close();
+                } catch (IOException e) {
+                    // A journal that can't be closed has no pending state
+                }
+            }
+            this.journals.clear();
+        }
+    }
+}
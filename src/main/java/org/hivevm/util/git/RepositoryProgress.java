@@ -0,0 +1,16 @@
+// Copyright 2024 HiveVM.ORG. All rights reserved.
+// SPDX-License-Identifier: MIT
+
+package org.hivevm.util.git;
+
+import java.io.File;
+import java.time.Duration;
+
+/**
+ * Represents the progress of a task of an operation on a repository, like receiving or resolving
+ * the objects of a clone. The total is 0 if it is unknown. The bytes are measured by the growth of
+ * the pack files of the repository since the task has been started. The estimated time is
+ * <code>null</code> as long as it can't be derived from the completed units.
+ */
+public record RepositoryProgress(File location, String task, int completed, int total, long bytes,
+    double bytesPerSecond, Duration eta, boolean done) {}
@@ -0,0 +1,92 @@
+// Copyright 2024 HiveVM.ORG. All rights reserved.
+// SPDX-License-Identifier: MIT
+
+package org.hivevm.util.git;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@link RepositoryProgressAggregator} keeps the latest {@link RepositoryProgress} of each
+ * repository, so the progress of the submodules that are cloned or fetched in parallel can be
+ * observed as a whole: the total throughput, the active transfers and the transfers that didn't
+ * report any progress for a while. The progress is forwarded to an optional listener.
+ * <p>
+ * The aggregator may be updated and queried concurrently.
+ */
+public final class RepositoryProgressAggregator implements RepositoryProgressListener {
+
+    private final RepositoryProgressListener listener;
+    private final Map<File, Entry>           entries = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs an instance of {@link RepositoryProgressAggregator}.
+     */
+    public RepositoryProgressAggregator() {
+        this(null);
+    }
+
+    /**
+     * Constructs an instance of {@link RepositoryProgressAggregator}, which forwards the progress
+     * to the listener.
+     */
+    public RepositoryProgressAggregator(RepositoryProgressListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Records the progress of the repository.
+     */
+    @Override
+    public void onProgress(RepositoryProgress progress) {
+        var now = System.nanoTime();
+        this.entries.compute(progress.location(), (l, e) -> {
+            var bytes = ((e == null) || !e.progress().done()) ? 0 : e.progress().bytes();
+            return new Entry(progress, now, (e == null) ? 0 : e.finished() + bytes);
+        });
+        if (this.listener != null)
+            this.listener.onProgress(progress);
+    }
+
+    /**
+     * Gets the latest progress of the repositories with a running task.
+     */
+    public List<RepositoryProgress> getActive() {
+        return this.entries.values().stream().map(Entry::progress).filter(p -> !p.done())
+            .toList();
+    }
+
+    /**
+     * Gets the latest progress of the repositories with a running task, that didn't report any
+     * progress within the duration.
+     */
+    public List<RepositoryProgress> getStalled(Duration duration) {
+        var limit = System.nanoTime() - duration.toNanos();
+        return this.entries.values().stream().filter(e -> !e.progress().done())
+            .filter(e -> (e.updated() - limit) < 0).map(Entry::progress).toList();
+    }
+
+    /**
+     * Gets the sum of the bytes per second of the running tasks.
+     */
+    public double getBytesPerSecond() {
+        return getActive().stream().mapToDouble(RepositoryProgress::bytesPerSecond).sum();
+    }
+
+    /**
+     * Gets the sum of the bytes of the tasks of all repositories.
+     */
+    public long getBytes() {
+        return this.entries.values().stream().mapToLong(e -> e.finished() + e.progress().bytes())
+            .sum();
+    }
+
+    /**
+     * Represents the latest progress of a repository, the time it has been reported and the bytes
+     * of the finished tasks before.
+     */
+    private record Entry(RepositoryProgress progress, long updated, long finished) {}
+}
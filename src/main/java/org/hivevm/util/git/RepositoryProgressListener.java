@@ -0,0 +1,18 @@
+// Copyright 2024 HiveVM.ORG. All rights reserved.
+// SPDX-License-Identifier: MIT
+
+package org.hivevm.util.git;
+
+/**
+ * The {@link RepositoryProgressListener} receives the {@link RepositoryProgress} of the tasks of
+ * the operations on a repository and its submodules. The progress of submodules that are processed
+ * in parallel is reported concurrently.
+ */
+@FunctionalInterface
+public interface RepositoryProgressListener {
+
+    /**
+     * Called when a task is started, periodically while it is running and when it is done.
+     */
+    void onProgress(RepositoryProgress progress);
+}
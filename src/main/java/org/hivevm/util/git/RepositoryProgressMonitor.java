@@ -0,0 +1,139 @@
+// Copyright 2024 HiveVM.ORG. All rights reserved.
+// SPDX-License-Identifier: MIT
+
+package org.hivevm.util.git;
+
+import java.io.File;
+import java.time.Duration;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ProgressMonitor;
+
+/**
+ * The {@link RepositoryProgressMonitor} reports the progress of the tasks of an operation on a
+ * repository as {@link RepositoryProgress} to a {@link RepositoryProgressListener}. The progress of
+ * a running task is reported at most every 250 ms. The bytes of a task are measured by the size of
+ * the pack files, including the incoming pack that is written to the object directory while the
+ * objects are received.
+ * <p>
+ * The progress is forwarded to the monitor of the operation, like the text monitor enabled by the
+ * {@link RepositoryBuilder}.
+ */
+class RepositoryProgressMonitor implements ProgressMonitor {
+
+    private static final long INTERVAL = Duration.ofMillis(250).toNanos();
+
+
+    private final RepositoryProgressListener listener;
+    private final File                       location;
+    private final File                       directory;
+    private final ProgressMonitor            monitor;
+
+    private String task;
+    private int    total;
+    private int    completed;
+    private long   started;
+    private long   reported;
+    private long   size;
+
+    /**
+     * Constructs an instance of {@link RepositoryProgressMonitor} for the repository with the
+     * location and Git directory.
+     */
+    RepositoryProgressMonitor(RepositoryProgressListener listener, File location, File directory,
+        ProgressMonitor monitor) {
+        this.listener = listener;
+        this.location = location;
+        this.directory = directory;
+        this.monitor = (monitor == null) ? NullProgressMonitor.INSTANCE : monitor;
+    }
+
+    @Override
+    public final void start(int totalTasks) {
+        this.monitor.start(totalTasks);
+    }
+
+    @Override
+    public final void beginTask(String title, int totalWork) {
+        this.task = title;
+        this.total = Math.max(0, totalWork);
+        this.completed = 0;
+        this.started = System.nanoTime();
+        this.size = RepositoryProgressMonitor.getSize(this.directory);
+        report(false);
+        this.monitor.beginTask(title, totalWork);
+    }
+
+    @Override
+    public final void update(int units) {
+        this.completed += units;
+        if ((System.nanoTime() - this.reported) >= RepositoryProgressMonitor.INTERVAL)
+            report(false);
+        this.monitor.update(units);
+    }
+
+    @Override
+    public final void endTask() {
+        if (this.task != null)
+            report(true);
+        this.task = null;
+        this.monitor.endTask();
+    }
+
+    @Override
+    public final boolean isCancelled() {
+        return this.monitor.isCancelled();
+    }
+
+    @Override
+    public final void showDuration(boolean enabled) {
+        this.monitor.showDuration(enabled);
+    }
+
+    /**
+     * Reports the progress of the current task.
+     */
+    private void report(boolean done) {
+        if (this.task == null)
+            return;
+
+        var now = System.nanoTime();
+        var elapsed = now - this.started;
+        var bytes = Math.max(0, RepositoryProgressMonitor.getSize(this.directory) - this.size);
+        var rate = (elapsed > 0) ? (bytes * 1e9) / elapsed : 0;
+        Duration eta = null;
+        if (done)
+            eta = Duration.ZERO;
+        else if ((this.total > 0) && (this.completed > 0))
+            eta = Duration.ofNanos(
+                (long) (elapsed * ((double) (this.total - this.completed) / this.completed)));
+
+        this.reported = now;
+        this.listener.onProgress(new RepositoryProgress(this.location, this.task, this.completed,
+            this.total, bytes, rate, eta, done));
+    }
+
+    /**
+     * Gets the size of the pack files of the repository with the Git directory, including the
+     * incoming packs.
+     */
+    static long getSize(File directory) {
+        if (directory == null)
+            return 0;
+        var objects = new File(directory, Constants.OBJECTS);
+        var incoming = objects.listFiles(f -> f.getName().endsWith(".pack"));
+        var packs = new File(objects, "pack").listFiles(f -> f.getName().endsWith(".pack"));
+        return RepositoryProgressMonitor.getSize(incoming)
+            + RepositoryProgressMonitor.getSize(packs);
+    }
+
+    /**
+     * Gets the size of the files.
+     */
+    private static long getSize(File[] files) {
+        long size = 0;
+        for (int i = 0; (files != null) && (i < files.length); i++)
+            size += files[i].length();
+        return size;
+    }
+}
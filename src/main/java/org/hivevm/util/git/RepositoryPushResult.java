@@ -0,0 +1,30 @@
+// Copyright 2024 HiveVM.ORG. All rights reserved.
+// SPDX-License-Identifier: MIT
+
+package org.hivevm.util.git;
+
+import java.io.File;
+import org.eclipse.jgit.transport.RemoteRefUpdate;
+import org.eclipse.jgit.transport.RemoteRefUpdate.Status;
+
+/**
+ * Represents the result of pushing a single ref of a repository or submodule. A rejected ref
+ * doesn't fail the push of the other refs, its {@link Status} and the message of the remote are
+ * reported instead.
+ */
+public record RepositoryPushResult(File location, String ref, Status status, String message) {
+
+    /**
+     * Constructs an instance of {@link RepositoryPushResult} from the update of a remote ref.
+     */
+    RepositoryPushResult(File location, RemoteRefUpdate update) {
+        this(location, update.getRemoteName(), update.getStatus(), update.getMessage());
+    }
+
+    /**
+     * Returns <code>true</code> if the remote ref has been updated or was already up to date.
+     */
+    public boolean isSuccessful() {
+        return (status() == Status.OK) || (status() == Status.UP_TO_DATE);
+    }
+}
@@ -0,0 +1,116 @@
+// Copyright 2024 HiveVM.ORG. All rights reserved.
+// SPDX-License-Identifier: MIT
+
+package org.hivevm.util.git;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+/**
+ * The {@link RepositoryQuery} is a session for resolving commits of a repository. The session
+ * shares a single {@link ObjectReader} and {@link RevWalk}, so the parsed commits are cached and
+ * the reader is only set up once. The refs resolved by name are cached as well, so a query doesn't
+ * see refs updated after the first lookup.
+ * <p>
+ * A {@link RepositoryQuery} is not thread-safe and has to be closed after use.
+ */
+public final class RepositoryQuery implements AutoCloseable {
+
+    private final Repository             repository;
+    private final ObjectReader           reader;
+    private final RevWalk                walk;
+    private final Map<String, RevCommit> names = new HashMap<>();
+
+    /**
+     * Constructs an instance of {@link RepositoryQuery}.
+     */
+    RepositoryQuery(Repository repository) {
+        this.repository = repository;
+        this.reader = repository.newObjectReader();
+        this.walk = new RevWalk(this.reader);
+    }
+
+    /**
+     * Gets the {@link RevWalk} of the session. The walk may be used to walk the history, but it
+     * has to be reset before the commits are resolved again.
+     */
+    public RevWalk getWalk() {
+        return this.walk;
+    }
+
+    /**
+     * Gets the {@link ObjectReader} of the session.
+     */
+    public ObjectReader getReader() {
+        return this.reader;
+    }
+
+    /**
+     * Retrieves the commit for the name, which is either an object ID hash or the name of a ref.
+     * Returns <code>null</code> if no ref with the name exists.
+     */
+    public RevCommit getCommit(String name) throws IOException {
+        if (ObjectId.isId(name))
+            return getCommit(ObjectId.fromString(name));
+        if (this.names.containsKey(name))
+            return this.names.get(name);
+
+        var ref = this.repository.findRef(name);
+        var commit = (ref == null) ? null : getCommit(ref.getObjectId());
+        this.names.put(name, commit);
+        return commit;
+    }
+
+    /**
+     * Retrieves the commit with the object ID.
+     */
+    public RevCommit getCommit(AnyObjectId id) throws IOException {
+        return this.walk.parseCommit(id);
+    }
+
+    /**
+     * Retrieves the commits with the object IDs, in the order of the IDs. The commits are parsed
+     * in bulk, so the object database may load them in the order of its storage.
+     */
+    public List<RevCommit> getCommits(Collection<? extends AnyObjectId> ids) throws IOException {
+        var commits = new ArrayList<RevCommit>(ids.size());
+        var missing = new ArrayList<RevCommit>();
+        for (var id : ids) {
+            var commit = this.walk.lookupCommit(id);
+            commits.add(commit);
+            if (commit.getRawBuffer() == null)
+                missing.add(commit);
+        }
+
+        if (!missing.isEmpty()) {
+            var queue = this.walk.parseAny(missing, true);
+            try {
+                while (queue.next() != null) {
+                    // The commits are parsed in place
+                }
+            } finally {
+                queue.release();
+            }
+        }
+        return commits;
+    }
+
+    /**
+     * Closes the {@link RevWalk} and the {@link ObjectReader} of the session.
+     */
+    @Override
+    public void close() {
+        this.walk.close();
+        this.reader.close();
+    }
+}
@@ -0,0 +1,315 @@
+// Copyright 2024 HiveVM.ORG. All rights reserved.
+// SPDX-License-Identifier: MIT
+
+package org.hivevm.util.git;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.submodule.SubmoduleWalk;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.hivevm.util.Version;
+
+/**
+ * The {@link RepositoryReleaseNotes} streams the notes of the commits between two releases, newest
+ * first. The commits are read lazily from the walk and their messages are released once the note
+ * is created, so the memory doesn't grow with the message sizes of a range.
+ * <p>
+ * The submodules are expanded: the gitlinks of both releases are compared and the range of each
+ * changed submodule follows the notes of the repository. With an {@link Executor}, the ranges of
+ * the submodules are walked in parallel into bounded queues; without one they are walked in turn.
+ * A submodule that isn't checked out or misses a commit of its range is skipped and the exception
+ * is recorded by the repository.
+ * <p>
+ * The streams have to be closed after use.
+ */
+public final class RepositoryReleaseNotes {
+
+    private static final int QUEUE = 256;
+
+
+    private final Repository        repository;
+    private final RepositoryBacklog backlog;
+    private final Executor          executor;
+
+    /**
+     * Represents the note of a commit. The module is the path of the submodule or an empty text
+     * for the repository itself. The keys are the backlog keys of the message.
+     */
+    public record Note(String module, ObjectId commit, String summary, String author,
+        OffsetDateTime time, List<String> keys) {}
+
+    /**
+     * Constructs an instance of {@link RepositoryReleaseNotes}.
+     */
+    RepositoryReleaseNotes(Repository repository, RepositoryBacklog backlog, Executor executor) {
+        this.repository = repository;
+        this.backlog = backlog;
+        this.executor = executor;
+    }
+
+    /**
+     * Streams the notes of the commits after the revision <code>from</code> up to the revision
+     * <code>to</code>. Without <code>from</code> the whole history is streamed.
+     */
+    public Stream<Note> stream(Revision from, Revision to) throws GitAPIException, IOException {
+        return stream((from == null) ? null : resolve(from.hash()), resolve(to.hash()));
+    }
+
+    /**
+     * Streams the notes of the commits after the tag of the version <code>from</code> up to the
+     * tag of the version <code>to</code>. Without <code>from</code> the whole history is
+     * streamed.
+     */
+    public Stream<Note> stream(Version from, Version to) throws GitAPIException, IOException {
+        return stream((from == null) ? null : resolve(from), resolve(to));
+    }
+
+    /**
+     * Groups the notes by their backlog keys, in the order of the notes. A note with several keys
+     * is added to each group, the notes without a key are grouped by an empty key.
+     */
+    public static Map<String, List<Note>> groupByKey(Stream<Note> notes) {
+        var groups = new LinkedHashMap<String, List<Note>>();
+        try (notes) {
+            notes.forEach(n -> {
+                for (var key : n.keys().isEmpty() ? List.of("") : n.keys())
+                    groups.computeIfAbsent(key, k -> new ArrayList<>()).add(n);
+            });
+        }
+        return groups;
+    }
+
+    /**
+     * Streams the notes of the repository and the changed submodules.
+     */
+    private Stream<Note> stream(ObjectId from, ObjectId to) throws IOException {
+        var git = this.repository.getGit().getRepository();
+        var ranges = new ArrayList<Range>();
+        if (!git.isBare()) {
+            try (var walk = new RevWalk(git); var tree = new TreeWalk(git)) {
+                tree.setRecursive(true);
+                tree.addTree(walk.parseCommit(to).getTree());
+                if (from == null)
+                    tree.addTree(new EmptyTreeIterator());
+                else
+                    tree.addTree(walk.parseCommit(from).getTree());
+                while (tree.next()) {
+                    if ((tree.getFileMode(0) == FileMode.GITLINK)
+                        && !tree.getObjectId(0).equals(tree.getObjectId(1)))
+                        ranges.add(new Range(tree.getPathString(),
+                            (tree.getFileMode(1) == FileMode.GITLINK) ? tree.getObjectId(1) : null,
+                            tree.getObjectId(0)));
+                }
+            }
+        }
+
+        var closed = new AtomicBoolean();
+        var stream = stream(git, "", from, to);
+        for (var range : ranges) {
+            var module = (this.executor == null) ? Stream.of(range).flatMap(this::stream)
+                : submit(range, closed);
+            stream = Stream.concat(stream, module);
+        }
+        return stream.onClose(() -> closed.set(true));
+    }
+
+    /**
+     * Streams the notes of the range of a submodule. The submodule is opened when the stream is
+     * consumed.
+     */
+    private Stream<Note> stream(Range range) {
+        var module = open(range.path());
+        if (module == null)
+            return Stream.empty();
+        try {
+            return stream(module, range.path(), range.from(), range.to()).onClose(module::close);
+        } catch (IOException | RuntimeException e) {
+            module.close();
+            this.repository.handleException(new RepositoryException(
+                "Submodule '%s' can't be walked: %s".formatted(range.path(), e.getMessage())));
+            return Stream.empty();
+        }
+    }
+
+    /**
+     * Streams the notes of the commits reachable from <code>to</code>, but not from
+     * <code>from</code>.
+     */
+    private Stream<Note> stream(org.eclipse.jgit.lib.Repository git, String module,
+        AnyObjectId from, AnyObjectId to) throws IOException {
+        var walk = new RevWalk(git);
+        try {
+            walk.markStart(walk.parseCommit(to));
+            if (from != null)
+                walk.markUninteresting(walk.parseCommit(from));
+        } catch (IOException | RuntimeException e) {
+            walk.close();
+            throw e;
+        }
+
+        var iterator = new Iterator<Note>() {
+
+            private RevCommit next;
+
+            @Override
+            public boolean hasNext() {
+                try {
+                    if (this.next == null)
+                        this.next = walk.next();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return this.next != null;
+            }
+
+            @Override
+            public Note next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                var commit = this.next;
+                this.next = null;
+                var note = new Note(module, commit.toObjectId(), commit.getShortMessage(),
+                    commit.getAuthorIdent().getName(), RepositoryVersion.getTime(commit),
+                    RepositoryReleaseNotes.this.backlog.extract(commit.getFullMessage()));
+                commit.disposeBody();
+                return note;
+            }
+        };
+        var spliterator = Spliterators.spliteratorUnknownSize(iterator,
+            Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(walk::close);
+    }
+
+    /**
+     * Walks the range of the submodule on the executor into a bounded queue and streams the notes
+     * from the queue. The walk stops when the stream is closed.
+     */
+    private Stream<Note> submit(Range range, AtomicBoolean closed) {
+        var queue = new ArrayBlockingQueue<Note>(RepositoryReleaseNotes.QUEUE);
+        var end = new Note(range.path(), ObjectId.zeroId(), null, null, null, List.of());
+        this.executor.execute(() -> {
+            try (var notes = stream(range)) {
+                var iterator = notes.iterator();
+                while (iterator.hasNext() && RepositoryReleaseNotes.put(queue, iterator.next(),
+                    closed)) {
+                    // The notes are consumed by the stream
+                }
+            } catch (RuntimeException e) {
+                this.repository.handleException(e);
+            } finally {
+                RepositoryReleaseNotes.put(queue, end, closed);
+            }
+        });
+
+        var iterator = new Iterator<Note>() {
+
+            private Note next;
+
+            @Override
+            public boolean hasNext() {
+                try {
+                    if (this.next == null)
+                        this.next = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    this.next = end;
+                }
+                return this.next != end;
+            }
+
+            @Override
+            public Note next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                var note = this.next;
+                this.next = null;
+                return note;
+            }
+        };
+        var spliterator = Spliterators.spliteratorUnknownSize(iterator,
+            Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false);
+    }
+
+    /**
+     * Puts the note into the queue, unless the stream has been closed. Returns <code>false</code>
+     * if the stream has been closed.
+     */
+    private static boolean put(BlockingQueue<Note> queue, Note note, AtomicBoolean closed) {
+        try {
+            while (!closed.get()) {
+                if (queue.offer(note, 100, TimeUnit.MILLISECONDS))
+                    return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    /**
+     * Opens the repository of the submodule or returns <code>null</code> if it isn't checked out.
+     */
+    private org.eclipse.jgit.lib.Repository open(String path) {
+        try {
+            var module = SubmoduleWalk.getSubmoduleRepository(
+                this.repository.getGit().getRepository(), path);
+            if (module == null)
+                this.repository.handleException(new RepositoryException(
+                    "Submodule '%s' is not available".formatted(path)));
+            return module;
+        } catch (IOException e) {
+            this.repository.handleException(e);
+            return null;
+        }
+    }
+
+    /**
+     * Resolves the commit of the abbreviated hash of a {@link Revision}.
+     */
+    private ObjectId resolve(String hash) throws GitAPIException, IOException {
+        var id = this.repository.getGit().getRepository().resolve(hash + "^{commit}");
+        if (id == null)
+            throw new RepositoryException("Revision '%s' is not available".formatted(hash));
+        return id;
+    }
+
+    /**
+     * Resolves the commit of the tag with the version.
+     */
+    private ObjectId resolve(Version version) throws GitAPIException, IOException {
+        var id = RepositoryVersion.getTaggedCommit(this.repository.getGit(), version);
+        if (id == null)
+            throw new RepositoryException("Version '%s' is not tagged".formatted(version));
+        return id;
+    }
+
+    /**
+     * Represents the range of a submodule between two gitlinks. The start is <code>null</code> for
+     * an added submodule.
+     */
+    private record Range(String path, ObjectId from, ObjectId to) {}
+}
@@ -0,0 +1,22 @@
+// Copyright 2024 HiveVM.ORG. All rights reserved.
+// SPDX-License-Identifier: MIT
+
+package org.hivevm.util.git;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Represents the result of an operation that has been run by the {@link RepositoryAsync} on a
+ * repository and its submodules. The exceptions recorded by the operation are reported with the
+ * result, they don't fail the future of the operation.
+ */
+public record RepositoryResult<T>(File location, T value, List<Throwable> exceptions) {
+
+    /**
+     * Returns <code>true</code> if the operation didn't record any exception.
+     */
+    public boolean isSuccessful() {
+        return exceptions().isEmpty();
+    }
+}
@@ -0,0 +1,209 @@
+// Copyright 2024 HiveVM.ORG. All rights reserved.
+// SPDX-License-Identifier: MIT
+
+package org.hivevm.util.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.api.errors.TransportException;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevFlag;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.transport.CredentialsProvider;
+import org.eclipse.jgit.transport.FilterSpec;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.TagOpt;
+import org.eclipse.jgit.util.FS;
+
+/**
+ * The {@link RepositoryShallow} resolves the commit count of a commit in a shallow repository,
+ * where the history ends at the shallow commits. The count is resolved by the first of the
+ * following strategies that provides the complete history:
+ * <ol>
+ * <li>the alternates of the repository, like the {@link RepositoryStore} or the
+ * {@link RepositoryMirror}, which keep the full history of the remote,</li>
+ * <li>a bare history repository in the Git directory, which fetches the branches of the origin
+ * with the filter <code>tree:0</code>, so only the commits are transferred. If the remote doesn't
+ * support the filter, the full branches are fetched.</li>
+ * </ol>
+ * The commits that are only available in the repository are counted on their own, so local commits
+ * on top of the fetched history are counted as well. A resolved count is stored in the
+ * {@link RepositoryCommitCount} of the repository, which resolves later commits from it.
+ */
+final class RepositoryShallow {
+
+    private static final String HISTORY = "hivevm/history";
+
+    /**
+     * The {@link RepositoryShallow} serves as a utility class.
+     */
+    private RepositoryShallow() {}
+
+    /**
+     * Gets the number of commits reachable from the commit of a shallow repository, including the
+     * commit itself.
+     */
+    static long count(Git git, CredentialsProvider credentials, RevCommit commit)
+        throws IOException {
+        var repository = git.getRepository();
+        var count = -1L;
+        for (var alternate : RepositoryShallow.getAlternates(repository)) {
+            try (var history = new FileRepositoryBuilder().setGitDir(alternate.getParentFile())
+                .setMustExist(true).build()) {
+                count = RepositoryShallow.count(repository, history, commit);
+            } catch (IOException e) {
+                // An alternate without a repository doesn't provide a history
+            }
+            if (count >= 0)
+                break;
+        }
+
+        if (count < 0)
+            count = RepositoryShallow.countHistory(repository, credentials, commit);
+        if (count < 0)
+            throw new IOException(
+                "The history of commit %s is not available in '%s'".formatted(commit.name(),
+                    repository.getDirectory()));
+
+        new RepositoryCommitCount(repository).put(commit, count);
+        return count;
+    }
+
+    /**
+     * Counts the commits reachable from the commit, using the commits of the history. The history
+     * is walked for the commits that are available in the history, the commits that are only
+     * available in the repository are counted on their own. Returns -1 if the history doesn't
+     * provide the commits behind a shallow commit of the repository.
+     */
+    private static long count(Repository repository, Repository history, AnyObjectId commit)
+        throws IOException {
+        var shallow = repository.getObjectDatabase().getShallowCommits();
+        var database = history.getObjectDatabase();
+        var known = new ArrayList<AnyObjectId>();
+        long count = 0;
+        try (var walk = new RevWalk(repository)) {
+            walk.setRetainBody(false);
+            walk.markStart(walk.parseCommit(commit));
+            for (var rev : walk) {
+                if (database.has(rev)) {
+                    known.add(rev.copy());
+                    rev.add(RevFlag.UNINTERESTING);
+                    rev.carry(RevFlag.UNINTERESTING);
+                } else if (shallow.contains(rev))
+                    return -1;
+                else
+                    count++;
+            }
+        }
+
+        if (known.size() == 1) {
+            var knownCount = new RepositoryCommitCount(history).count(known.get(0));
+            return (knownCount < 0) ? -1 : count + knownCount;
+        }
+
+        var historyShallow = database.getShallowCommits();
+        try (var walk = new RevWalk(history)) {
+            walk.setRetainBody(false);
+            for (var id : known)
+                walk.markStart(walk.parseCommit(id));
+            for (var rev : walk) {
+                if (historyShallow.contains(rev))
+                    return -1;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Counts the commits reachable from the commit, using the history repository. The history
+     * repository is updated from the origin first, so only new commits are transferred. Returns -1
+     * if the commits are not available.
+     */
+    private static long countHistory(Repository repository, CredentialsProvider credentials,
+        AnyObjectId commit) throws IOException {
+        var remote = repository.getConfig().getString(ConfigConstants.CONFIG_REMOTE_SECTION,
+            Constants.DEFAULT_REMOTE_NAME, ConfigConstants.CONFIG_KEY_URL);
+        if (remote == null)
+            return -1;
+
+        try (var history = RepositoryShallow.openHistory(repository);
+            var git = new Git(history)) {
+            try {
+                RepositoryShallow.fetch(git, remote, credentials, FilterSpec.fromFilterLine("tree:0"));
+            } catch (TransportException e) {
+                RepositoryShallow.fetch(git, remote, credentials, FilterSpec.NO_FILTER);
+            }
+            return RepositoryShallow.count(repository, history, commit);
+        } catch (GitAPIException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Opens the history repository of the repository, creating it if it doesn't exist. A repository
+     * without a Git directory uses a history repository in memory.
+     */
+    private static Repository openHistory(Repository repository)
+        throws GitAPIException, IOException {
+        if (repository.getDirectory() == null) {
+            var builder = new InMemoryRepository.Builder();
+            builder.setRepositoryDescription(new DfsRepositoryDescription("history"));
+            builder.setFS(FS.DETECTED);
+            return builder.build();
+        }
+
+        var location = new File(repository.getDirectory(), RepositoryShallow.HISTORY);
+        if (!location.exists())
+            Git.init().setBare(true).setDirectory(location).call().close();
+        return new FileRepositoryBuilder().setGitDir(location).setMustExist(true).build();
+    }
+
+    /**
+     * Fetches the branches of the remote into the history repository.
+     */
+    private static void fetch(Git git, String remote, CredentialsProvider credentials,
+        FilterSpec filter) throws GitAPIException {
+        var command = git.fetch();
+        command.setRemote(remote);
+        command.setCredentialsProvider(credentials);
+        command.setRefSpecs(new RefSpec("+refs/heads/*:refs/heads/*"));
+        command.setTagOpt(TagOpt.NO_TAGS);
+        command.setTransportConfigCallback(t -> t.setFilterSpec(filter));
+        command.call();
+    }
+
+    /**
+     * Gets the object directories of the alternates of the repository.
+     */
+    private static List<File> getAlternates(Repository repository) throws IOException {
+        var alternates = new ArrayList<File>();
+        if (repository.getDirectory() == null)
+            return alternates;
+
+        var objects = new File(repository.getDirectory(), Constants.OBJECTS);
+        var file = new File(objects, "info/alternates");
+        if (file.exists()) {
+            for (var line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+                if (!line.isBlank() && !line.startsWith("#")) {
+                    var alternate = new File(line.trim());
+                    alternates.add(alternate.isAbsolute() ? alternate : new File(objects, line.trim()));
+                }
+            }
+        }
+        return alternates;
+    }
+}
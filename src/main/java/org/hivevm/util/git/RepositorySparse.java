@@ -0,0 +1,144 @@
+// Copyright 2024 HiveVM.ORG. All rights reserved.
+// SPDX-License-Identifier: MIT
+
+package org.hivevm.util.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Set;
+import java.util.TreeSet;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * The {@link RepositorySparse} holds the sparse-checkout patterns of a repository. The patterns use
+ * the cone mode of Git: a pattern is a directory, which is checked out with all of its content.
+ * The files at the root of the work tree and the files directly within the parents of a pattern are
+ * checked out as well.
+ * <p>
+ * The patterns are stored in <code>info/sparse-checkout</code> of the Git directory, with
+ * <code>core.sparseCheckout</code> and <code>core.sparseCheckoutCone</code> enabled, so the
+ * command line of Git applies the same patterns to the work tree.
+ */
+final class RepositorySparse {
+
+    private static final String FILE              = "info/sparse-checkout";
+    private static final String CONFIG_KEY_SPARSE = "sparseCheckout";
+    private static final String CONFIG_KEY_CONE   = "sparseCheckoutCone";
+
+
+    private final Set<String> directories;
+    private final Set<String> parents;
+
+    /**
+     * Constructs an instance of {@link RepositorySparse}.
+     */
+    private RepositorySparse(Collection<String> directories) {
+        this.directories = new TreeSet<>();
+        this.parents = new TreeSet<>();
+        for (var directory : directories) {
+            var path = RepositorySparse.normalize(directory);
+            if (!path.isEmpty())
+                this.directories.add(path);
+        }
+        for (var directory : this.directories) {
+            for (int i = directory.indexOf('/'); i > 0; i = directory.indexOf('/', i + 1))
+                this.parents.add(directory.substring(0, i));
+        }
+    }
+
+    /**
+     * Gets the directories that are checked out with all of their content.
+     */
+    public final Set<String> getDirectories() {
+        return this.directories;
+    }
+
+    /**
+     * Returns <code>true</code> if the path is part of the sparse checkout.
+     */
+    public final boolean includes(String path) {
+        var index = path.lastIndexOf('/');
+        if ((index < 0) || this.parents.contains(path.substring(0, index)))
+            return true;
+        for (var directory : this.directories) {
+            if (path.equals(directory)
+                || (path.startsWith(directory) && (path.charAt(directory.length()) == '/')))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reads the sparse-checkout patterns of the repository. Returns <code>null</code> if the
+     * repository isn't a sparse checkout.
+     */
+    public static RepositorySparse read(Repository repository) throws IOException {
+        var config = repository.getConfig();
+        if ((repository.getDirectory() == null) || repository.isBare()
+            || !config.getBoolean(ConfigConstants.CONFIG_CORE_SECTION,
+                RepositorySparse.CONFIG_KEY_SPARSE, false))
+            return null;
+
+        var file = new File(repository.getDirectory(), RepositorySparse.FILE);
+        if (!file.exists())
+            return null;
+
+        var positive = new ArrayList<String>();
+        var negative = new TreeSet<String>();
+        for (var line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if (line.startsWith("!/") && line.endsWith("/*/"))
+                negative.add(RepositorySparse.normalize(line.substring(1, line.length() - 2)));
+            else if (line.startsWith("/") && line.endsWith("/") && !line.equals("/"))
+                positive.add(RepositorySparse.normalize(line));
+        }
+        positive.removeIf(negative::contains);
+        return new RepositorySparse(positive);
+    }
+
+    /**
+     * Writes the sparse-checkout patterns of the repository and enables the sparse checkout. If no
+     * directories are defined, the sparse checkout is disabled.
+     */
+    public static RepositorySparse write(Repository repository, Collection<String> directories)
+        throws IOException {
+        var file = new File(repository.getDirectory(), RepositorySparse.FILE);
+        var config = repository.getConfig();
+        if (directories.isEmpty()) {
+            config.unset(ConfigConstants.CONFIG_CORE_SECTION, null,
+                RepositorySparse.CONFIG_KEY_SPARSE);
+            config.unset(ConfigConstants.CONFIG_CORE_SECTION, null, RepositorySparse.CONFIG_KEY_CONE);
+            config.save();
+            Files.deleteIfExists(file.toPath());
+            return null;
+        }
+
+        var sparse = new RepositorySparse(directories);
+        var text = new StringBuilder("/*\n!/*/\n");
+        for (var parent : sparse.parents)
+            text.append('/').append(parent).append("/\n!/").append(parent).append("/*/\n");
+        for (var directory : sparse.directories)
+            text.append('/').append(directory).append("/\n");
+
+        file.getParentFile().mkdirs();
+        Files.writeString(file.toPath(), text, StandardCharsets.UTF_8);
+        config.setBoolean(ConfigConstants.CONFIG_CORE_SECTION, null,
+            RepositorySparse.CONFIG_KEY_SPARSE, true);
+        config.setBoolean(ConfigConstants.CONFIG_CORE_SECTION, null, RepositorySparse.CONFIG_KEY_CONE,
+            true);
+        config.save();
+        return sparse;
+    }
+
+    /**
+     * Removes leading and trailing slashes of a directory.
+     */
+    private static String normalize(String directory) {
+        return directory.replace('\\', '/').replaceAll("^/+|/+$", "");
+    }
+}
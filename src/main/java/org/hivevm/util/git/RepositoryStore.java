@@ -0,0 +1,161 @@
+// Copyright 2024 HiveVM.ORG. All rights reserved.
+// SPDX-License-Identifier: MIT
+
+package org.hivevm.util.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ProgressMonitor;
+import org.eclipse.jgit.transport.CredentialsProvider;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.TagOpt;
+
+/**
+ * The {@link RepositoryStore} keeps a bare repository per remote URL in a cache directory. The
+ * object database of the store is shared by the clones of the remote, using the
+ * <code>objects/info/alternates</code> file of Git, so a clone only transfers and stores the objects
+ * that are missing in the store.
+ * <p>
+ * Updates of a store are serialized within the process and between processes, using a lock file
+ * next to the bare repository. A request that waited for the update of another request doesn't
+ * fetch again, and a store that has been fetched within the maximum age isn't fetched at all. By
+ * default a store is fetched once an hour, as the fetch of a clone transfers the objects the store
+ * is missing anyway.
+ */
+class RepositoryStore {
+
+    private static final Map<String, Object> LOCKS = new ConcurrentHashMap<>();
+
+    private static final RefSpec  HEADS   = new RefSpec("+refs/heads/*:refs/heads/*");
+    private static final RefSpec  TAGS    = new RefSpec("+refs/tags/*:refs/tags/*");
+    private static final Duration MAX_AGE = Duration.ofHours(1);
+
+
+    private final File     directory;
+    private final Duration maxAge;
+
+    /**
+     * Constructs an instance of {@link RepositoryStore}, which fetches on an update only if the last
+     * fetch is older than an hour.
+     */
+    RepositoryStore(File directory) {
+        this(directory, RepositoryStore.MAX_AGE);
+    }
+
+    /**
+     * Constructs an instance of {@link RepositoryStore}, which fetches on an update only if the last
+     * fetch is older than the maximum age.
+     */
+    RepositoryStore(File directory, Duration maxAge) {
+        this.directory = directory;
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Gets the location of the bare repository for the remote URL. The name is derived from the
+     * last segment of the URL and a hash of the whole URL.
+     */
+    public final File getLocation(String remote) {
+        var name = remote.replaceAll("[/\\\\]+$", "");
+        name = name.substring(Math.max(name.lastIndexOf('/'), name.lastIndexOf(':')) + 1);
+        name = name.replaceAll("\\.git$", "").replaceAll("[^a-zA-Z0-9._-]", "_");
+        var hash = ObjectId.fromRaw(Constants.newMessageDigest()
+            .digest(remote.getBytes(StandardCharsets.UTF_8))).name().substring(0, 12);
+        return new File(this.directory, name + "-" + hash + ".git");
+    }
+
+    /**
+     * Gets the object directory of the bare repository for the remote URL.
+     */
+    public final File getObjects(String remote) {
+        return new File(getLocation(remote), Constants.OBJECTS);
+    }
+
+    /**
+     * Gets the time of the last fetch of the bare repository for the remote URL, or
+     * <code>null</code> if it has never been fetched.
+     */
+    public final Instant getFetched(String remote) {
+        var stamp = getStamp(getLocation(remote));
+        return stamp.exists() ? Instant.ofEpochMilli(stamp.lastModified()) : null;
+    }
+
+    /**
+     * Returns <code>true</code> if the bare repository for the remote URL has not been fetched
+     * within the maximum age.
+     */
+    public final boolean isStale(String remote) {
+        var fetched = getFetched(remote);
+        return (fetched == null) || this.maxAge.isZero()
+            || fetched.plus(this.maxAge).isBefore(Instant.now());
+    }
+
+    /**
+     * Updates the bare repository for the remote URL, creating it if it doesn't exist. Returns the
+     * object directory of the store.
+     */
+    public File update(String remote, CredentialsProvider credentials, ProgressMonitor monitor)
+        throws GitAPIException, IOException {
+        var requested = Instant.now();
+        if (!isStale(remote))
+            return getObjects(remote);
+
+        var location = getLocation(remote);
+        synchronized (RepositoryStore.LOCKS.computeIfAbsent(location.getAbsolutePath(),
+            l -> new Object())) {
+            this.directory.mkdirs();
+            var lock = new File(this.directory, location.getName() + ".lock");
+            try (var file = new RandomAccessFile(lock, "rw"); var channel = file.getChannel()) {
+                var locked = channel.lock();
+                try {
+                    var fetched = getFetched(remote);
+                    if ((fetched == null) || fetched.isBefore(requested)) {
+                        fetch(location, remote, credentials, monitor);
+                        var stamp = getStamp(location);
+                        Files.writeString(stamp.toPath(), Instant.now().toString());
+                        stamp.setLastModified(System.currentTimeMillis());
+                    }
+                } finally {
+                    locked.release();
+                }
+            }
+        }
+        return getObjects(remote);
+    }
+
+    /**
+     * Gets the file that records the time of the last fetch of the bare repository.
+     */
+    private File getStamp(File location) {
+        return new File(this.directory, location.getName() + ".fetched");
+    }
+
+    /**
+     * Fetches all branches and tags from the remote URL into the bare repository.
+     */
+    protected final void fetch(File location, String remote, CredentialsProvider credentials,
+        ProgressMonitor monitor) throws GitAPIException, IOException {
+        try (var git = location.exists() ? Git.open(location)
+            : Git.init().setBare(true).setDirectory(location).call()) {
+            var command = git.fetch();
+            command.setRemote(remote);
+            command.setCredentialsProvider(credentials);
+            command.setRefSpecs(RepositoryStore.HEADS, RepositoryStore.TAGS);
+            command.setTagOpt(TagOpt.FETCH_TAGS);
+            command.setRemoveDeletedRefs(true);
+            command.setProgressMonitor(monitor);
+            command.call();
+        }
+    }
+}
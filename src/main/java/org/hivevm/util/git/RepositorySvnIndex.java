@@ -0,0 +1,202 @@
+// Copyright 2024 HiveVM.ORG. All rights reserved.
+// SPDX-License-Identifier: MIT
+
+package org.hivevm.util.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+/**
+ * The {@link RepositorySvnIndex} maps the SVN revisions recorded by <code>git-svn-id</code> lines
+ * of the commit messages to the commits of a migrated repository. The index is built by a walk
+ * over the history of all refs and stored in a file in the Git directory. Later updates only walk
+ * the commits that aren't reachable from the refs indexed before.
+ * <p>
+ * The file is only appended: a line per new revision, followed by a line with the indexed refs. A
+ * partially written update is ignored on the next read. If a revision is recorded by several
+ * commits, the first indexed commit is kept. A repository without Git directory, like a repository
+ * in memory, is indexed in memory only.
+ */
+public final class RepositorySvnIndex {
+
+    private static final String  FILE    = "hivevm/svn-index";
+    private static final int     LIMIT   = 64;
+    private static final Pattern PATTERN = Pattern.compile("^git-svn-id: \\S+@(\\d+)(\\s|$)",
+        Pattern.MULTILINE);
+
+
+    private final Repository          repository;
+    private final File                file;
+    private final Map<Long, ObjectId> revisions = new HashMap<>();
+    private final Set<ObjectId>       tips      = new LinkedHashSet<>();
+    private boolean                   loaded;
+
+    /**
+     * Constructs an instance of {@link RepositorySvnIndex}.
+     */
+    RepositorySvnIndex(Repository repository) {
+        this.repository = repository;
+        this.file = (repository.getDirectory() == null) ? null
+            : new File(repository.getDirectory(), RepositorySvnIndex.FILE);
+    }
+
+    /**
+     * Gets the commit of the SVN revision or <code>null</code> if no commit records it. An unknown
+     * revision updates the index first.
+     */
+    public synchronized ObjectId getCommit(long revision) throws IOException {
+        load();
+        var commit = this.revisions.get(revision);
+        if ((commit == null) && (update() > 0))
+            commit = this.revisions.get(revision);
+        return commit;
+    }
+
+    /**
+     * Gets the number of indexed SVN revisions.
+     */
+    public synchronized int size() throws IOException {
+        load();
+        return this.revisions.size();
+    }
+
+    /**
+     * Adds the revisions of the commits that are reachable from the refs of the repository, but
+     * not from the refs indexed before. Returns the number of new revisions.
+     */
+    public synchronized int update() throws IOException {
+        load();
+        var heads = new LinkedHashSet<ObjectId>();
+        var added = new ArrayList<String>();
+        try (var walk = new RevWalk(this.repository)) {
+            for (var ref : this.repository.getRefDatabase().getRefs()) {
+                if ((ref.getObjectId() != null)
+                    && (walk.peel(walk.parseAny(ref.getObjectId())) instanceof RevCommit commit)) {
+                    heads.add(commit.toObjectId());
+                    walk.markStart(commit);
+                }
+            }
+            if (heads.equals(this.tips))
+                return 0;
+
+            for (var tip : this.tips) {
+                try {
+                    walk.markUninteresting(walk.parseCommit(tip));
+                } catch (MissingObjectException e) {
+                    // A pruned commit is walked again from the current refs
+                }
+            }
+
+            for (var commit = walk.next(); commit != null; commit = walk.next()) {
+                var matcher = RepositorySvnIndex.PATTERN.matcher(commit.getFullMessage());
+                if (matcher.find()) {
+                    var revision = Long.parseLong(matcher.group(1));
+                    if (this.revisions.putIfAbsent(revision, commit.toObjectId()) == null)
+                        added.add("r %d %s\n".formatted(revision, commit.name()));
+                }
+                commit.disposeBody();
+            }
+        }
+
+        this.tips.clear();
+        this.tips.addAll(heads);
+        write(added);
+        return added.size();
+    }
+
+    /**
+     * Reads the index from the file, once. Invalid lines are ignored, the refs of the last
+     * complete update are used.
+     */
+    private void load() {
+        if (this.loaded)
+            return;
+        this.loaded = true;
+        if ((this.file == null) || !this.file.exists())
+            return;
+
+        int updates = 0;
+        try {
+            var pending = new HashMap<Long, ObjectId>();
+            for (var line : Files.readAllLines(this.file.toPath(), StandardCharsets.UTF_8)) {
+                var values = line.split(" ");
+                if ((values.length == 3) && "r".equals(values[0]) && ObjectId.isId(values[2]))
+                    pending.putIfAbsent(Long.parseLong(values[1]), ObjectId.fromString(values[2]));
+                else if ((values.length > 0) && "t".equals(values[0])) {
+                    pending.forEach(this.revisions::putIfAbsent);
+                    pending.clear();
+                    this.tips.clear();
+                    for (int i = 1; i < values.length; i++)
+                        this.tips.add(ObjectId.fromString(values[i]));
+                    updates++;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // An unreadable index is rebuilt
+            this.revisions.clear();
+            this.tips.clear();
+            this.file.delete();
+            return;
+        }
+
+        if (updates > RepositorySvnIndex.LIMIT)
+            compact();
+    }
+
+    /**
+     * Appends the new revisions and the indexed refs to the file.
+     */
+    private void write(List<String> added) throws IOException {
+        if (this.file == null)
+            return;
+
+        var text = new StringBuilder();
+        added.forEach(text::append);
+        text.append(getTips());
+        this.file.getParentFile().mkdirs();
+        Files.writeString(this.file.toPath(), text, StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Rewrites the file with a single update, if too many updates have been appended.
+     */
+    private void compact() {
+        var text = this.revisions.entrySet().stream()
+            .map(e -> "r %d %s\n".formatted(e.getKey(), e.getValue().name()))
+            .collect(Collectors.joining()) + getTips();
+        var temp = new File(this.file.getParentFile(), this.file.getName() + ".tmp");
+        try {
+            Files.writeString(temp.toPath(), text, StandardCharsets.UTF_8);
+            Files.move(temp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // The file is compacted on the next read
+        }
+    }
+
+    /**
+     * Gets the line of the indexed refs.
+     */
+    private String getTips() {
+        return this.tips.stream().map(id -> " " + id.name())
+            .collect(Collectors.joining("", "t", "\n"));
+    }
+}
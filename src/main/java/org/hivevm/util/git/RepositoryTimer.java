@@ -0,0 +1,151 @@
+// Copyright 2024 HiveVM.ORG. All rights reserved.
+// SPDX-License-Identifier: MIT
+
+package org.hivevm.util.git;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.List;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ProgressMonitor;
+
+/**
+ * The {@link RepositoryTimer} measures a single operation on a repository and reports it as a
+ * {@link RepositoryEvent} to the {@link RepositoryListener}s, when the timer is closed. The timer
+ * serves as {@link ProgressMonitor} of the operation to count the received objects, the progress
+ * is forwarded to the monitor of the operation.
+ * <p>
+ * Without listeners nothing is measured.
+ */
+class RepositoryTimer implements ProgressMonitor, AutoCloseable {
+
+    private static final String RECEIVING = "Receiving objects";
+
+
+    private final List<RepositoryListener> listeners;
+    private final String                   operation;
+    private final File                     location;
+    private final File                     directory;
+    private final ProgressMonitor          monitor;
+    private final long                     started;
+    private final long                     size;
+
+    private long    suspended;
+    private long    objects;
+    private int     refs;
+    private boolean failed;
+
+    /**
+     * Constructs an instance of {@link RepositoryTimer} for the operation on the repository with
+     * the location and Git directory. The Git directory may be <code>null</code>, if it is unknown
+     * yet.
+     */
+    private RepositoryTimer(List<RepositoryListener> listeners, String operation, File location,
+        File directory, ProgressMonitor monitor) {
+        this.listeners = listeners;
+        this.operation = operation;
+        this.location = location;
+        this.directory = directory;
+        this.monitor = (monitor == null) ? NullProgressMonitor.INSTANCE : monitor;
+        this.started = System.nanoTime();
+        this.size = listeners.isEmpty() ? 0 : RepositoryProgressMonitor.getSize(this.directory);
+    }
+
+    /**
+     * Constructs an instance of {@link RepositoryTimer} for the operation on the repository. The
+     * progress is forwarded to the monitor of the repository.
+     */
+    RepositoryTimer(Repository repository, String operation) {
+        this(repository.getOptions(), operation, repository.getLocation(),
+            repository.getGit().getRepository().getDirectory(), repository.getMonitor());
+    }
+
+    /**
+     * Constructs an instance of {@link RepositoryTimer} for the operation on the repository with
+     * the location and Git directory. The progress is reported to the
+     * {@link RepositoryProgressListener} of the options and forwarded to the monitor.
+     */
+    RepositoryTimer(RepositoryOptions options, String operation, File location, File directory,
+        ProgressMonitor monitor) {
+        this(options.getListeners(), operation, location, directory,
+            (options.getProgress() == null) ? monitor
+                : new RepositoryProgressMonitor(options.getProgress(), location, directory,
+                    monitor));
+    }
+
+    /**
+     * Sets the number of refs updated by the operation.
+     */
+    final void setRefs(int refs) {
+        this.refs = refs;
+    }
+
+    /**
+     * Marks the operation as failed.
+     */
+    final void setFailed() {
+        this.failed = true;
+    }
+
+    /**
+     * Runs the action without accounting its duration to the operation, like the processing of a
+     * submodule while walking the submodules.
+     */
+    final void suspend(Runnable action) {
+        var time = System.nanoTime();
+        try {
+            action.run();
+        } finally {
+            this.suspended += System.nanoTime() - time;
+        }
+    }
+
+    /**
+     * Reports the event of the operation to the listeners.
+     */
+    @Override
+    public final void close() {
+        if (this.listeners.isEmpty())
+            return;
+
+        var duration = Duration.ofNanos(System.nanoTime() - this.started - this.suspended);
+        var bytes = Math.max(0, RepositoryProgressMonitor.getSize(this.directory) - this.size);
+        var event = new RepositoryEvent(this.operation, this.location, duration, bytes,
+            this.objects, this.refs, this.failed);
+        for (var listener : this.listeners)
+            listener.onEvent(event);
+    }
+
+    @Override
+    public final void start(int totalTasks) {
+        this.monitor.start(totalTasks);
+    }
+
+    @Override
+    public final void beginTask(String title, int totalWork) {
+        if (RepositoryTimer.RECEIVING.equals(title) && (totalWork > 0))
+            this.objects += totalWork;
+        this.monitor.beginTask(title, totalWork);
+    }
+
+    @Override
+    public final void update(int completed) {
+        this.monitor.update(completed);
+    }
+
+    @Override
+    public final void endTask() {
+        this.monitor.endTask();
+    }
+
+    @Override
+    public final boolean isCancelled() {
+        return this.monitor.isCancelled();
+    }
+
+    @Override
+    public final void showDuration(boolean enabled) {
+        this.monitor.showDuration(enabled);
+    }
+
+}
@@ -6,16 +6,23 @@ package org.hivevm.util.git;
 import java.io.IOException;
 import java.time.OffsetDateTime;
 import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 import org.eclipse.jgit.api.Git;
-import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevFlag;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.revwalk.RevWalkUtils;
+import org.eclipse.jgit.transport.CredentialsProvider;
 import org.hivevm.util.Version;
 
 /**
@@ -46,17 +53,49 @@ abstract class RepositoryVersion {
     }
 
     /**
-     * Calculates the total number of commits in the specified Git repository.
+     * Calculates the total number of commits reachable from the commit. The count is resolved from
+     * the {@link RepositoryCommitCount} cache, so only the commits added since the last calculation
+     * are walked.
      */
-    public static long getCommitCount(Git git) throws GitAPIException {
-        return StreamSupport.stream(git.log().call().spliterator(), false).count();
+    public static long getCommitCount(Git git, RevCommit revCommit) throws IOException {
+        return RepositoryVersion.getCommitCount(git, null, revCommit);
+    }
+
+    /**
+     * Calculates the total number of commits reachable from the commit. In a shallow repository
+     * the count is resolved by the {@link RepositoryShallow}, using the credentials to fetch the
+     * missing history.
+     */
+    public static long getCommitCount(Git git, CredentialsProvider credentials,
+        RevCommit revCommit) throws IOException {
+        var count = new RepositoryCommitCount(git.getRepository()).count(revCommit);
+        return (count < 0) ? RepositoryShallow.count(git, credentials, revCommit) : count;
     }
 
     /**
      * Retrieves the revision information from a Git repository, including the commit hash, commit
-     * time, and version information.
+     * time, and version information. The revision is resolved from the {@link RevisionCache}, as
+     * long as HEAD, the branch and the tags are unchanged.
      */
     public static Revision getRevision(Git git, Version version) throws IOException {
+        return RepositoryVersion.getRevision(git, null, version);
+    }
+
+    /**
+     * Retrieves the revision information from a Git repository. The credentials are used to
+     * resolve the build number of a shallow repository.
+     */
+    public static Revision getRevision(Git git, CredentialsProvider credentials, Version version)
+        throws IOException {
+        return RevisionCache.get(git.getRepository(), version,
+            () -> RepositoryVersion.loadRevision(git, credentials, version));
+    }
+
+    /**
+     * Loads the revision information from a Git repository by walking its history.
+     */
+    private static Revision loadRevision(Git git, CredentialsProvider credentials, Version version)
+        throws IOException {
         var branch = git.getRepository().getBranch();
         var refId = git.getRepository().resolve("HEAD");
 
@@ -64,7 +103,7 @@ abstract class RepositoryVersion {
             var revCommit = walk.parseCommit(refId);
             var time = RepositoryVersion.getTime(revCommit);
             var hash = revCommit.getName().substring(0, 9);
-            var buildNumber = RepositoryVersion.getCommitCount(git);
+            var buildNumber = RepositoryVersion.getCommitCount(git, credentials, revCommit);
 
             if (Version.NONE.equals(version)) {
                 var stream = RepositoryVersion.getTags(git, revCommit, walk).stream();
@@ -72,35 +111,89 @@ abstract class RepositoryVersion {
             }
 
             return new Revision(hash, time, version.build(buildNumber).preRelease(branch));
-        } catch (GitAPIException e) {
-            throw new IOException("Revision is not available on GIT", e);
         }
     }
 
     /**
-     * Retrieves a collection of {@link TagInfo} objects representing the tags in a Git repository
-     * that are merged into a specified commit.
+     * Retrieves a collection of {@link TagInfo} objects representing the nearest tags in a Git
+     * repository that are merged into a specified commit.
+     * <p>
+     * The tagged commits are mapped once, then the history is walked a single time backwards from
+     * the revision, like the describe of Git. The history behind a tagged commit is marked
+     * uninteresting, so the walk stops once every remaining commit is reachable from a tag already
+     * found. The tags behind are never nearer than the tag in front of them, so they are omitted.
      * <p>
-     * This method filters and processes the tags of the repository, determining whether each tag is
-     * merged into the given revision. If a tag is merged, it computes the commit count and extracts
-     * version information for the tag. The results are returned as a sorted collection of
-     * {@link TagInfo}.
+     * The commit count of a tag is the number of commits reachable from the revision, but not from
+     * the tag, which is the difference of their {@link RepositoryCommitCount}s. Only the tags found
+     * are counted, from the oldest to the newest, so each count only walks the history since the
+     * previous tag. In a shallow repository the commits between the revision and the tag are
+     * counted instead. The results are returned as a sorted collection of {@link TagInfo}.
+     */
+    static Collection<TagInfo> getTags(Git git, RevCommit rev, RevWalk walk) throws IOException {
+        var tags = RepositoryVersion.getTaggedCommits(git);
+        var tagged = new ArrayList<RevCommit>();
+
+        walk.reset();
+        walk.markStart(rev);
+        for (RevCommit commit = walk.next(); commit != null; commit = walk.next()) {
+            if (tags.containsKey(commit)) {
+                tagged.add(commit);
+                commit.add(RevFlag.UNINTERESTING);
+                commit.carry(RevFlag.UNINTERESTING);
+            }
+        }
+
+        var counter = new RepositoryCommitCount(git.getRepository());
+        var total = counter.count(walk, rev);
+        var result = new ArrayList<TagInfo>();
+        for (int i = tagged.size() - 1; i >= 0; i--) {
+            var commit = tagged.get(i);
+            var count = (total < 0) ? -1 : counter.count(walk, commit);
+            var distance = (count < 0) ? RevWalkUtils.count(walk, rev, commit)
+                : (int) (total - count);
+            for (var tag : tags.get(commit))
+                result.add(new TagInfo(tag.ref(), distance, tag.version()));
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Gets the commit of the tag with the version or <code>null</code> if no tag has the version.
+     * A tag with the same pre-release name is preferred.
      */
-    private static Collection<TagInfo> getTags(Git git, RevCommit rev, RevWalk walk)
-        throws GitAPIException {
-        return git.tagList().call().stream().map(tag -> {
+    static ObjectId getTaggedCommit(Git git, Version version) throws IOException {
+        ObjectId found = null;
+        for (var entry : RepositoryVersion.getTaggedCommits(git).entrySet()) {
+            for (var tag : entry.getValue()) {
+                if (!version.equals(tag.version()))
+                    continue;
+                if (Objects.equals(version.name(), tag.version().name()))
+                    return entry.getKey();
+                found = entry.getKey();
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Maps the peeled commit ids to the tags with a version, that point to them.
+     */
+    private static Map<ObjectId, List<TagInfo>> getTaggedCommits(Git git) throws IOException {
+        var database = git.getRepository().getRefDatabase();
+        var tags = new HashMap<ObjectId, List<TagInfo>>();
+        for (var ref : database.getRefsByPrefix(Constants.R_TAGS)) {
             try {
-                var tagCommit = walk.parseCommit(tag.getObjectId());
-                if (walk.isMergedInto(tagCommit, rev)) {
-                    var version = Version.parse(tag.getName(), RepositoryVersion.PATTERN);
-                    var count = RevWalkUtils.count(walk, rev, tagCommit);
-                    return new TagInfo(tag, count, version);
-                }
-            } catch (Exception e) {
-                System.err.println(e.getMessage());
+                var version = Version.parse(ref.getName(), RepositoryVersion.PATTERN);
+                var peeled = database.peel(ref);
+                var id = (peeled.getPeeledObjectId() == null) ? ref.getObjectId()
+                    : peeled.getPeeledObjectId();
+                tags.computeIfAbsent(id, i -> new ArrayList<>()).add(new TagInfo(ref, -1, version));
+            } catch (IllegalArgumentException e) {
+                // Tags without a version are ignored
             }
-            return new TagInfo(tag, -1, null);
-        }).filter(i -> i.count != -1).sorted().collect(Collectors.toList());
+        }
+        return tags;
     }
 
 
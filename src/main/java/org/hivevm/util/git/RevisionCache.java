@@ -0,0 +1,220 @@
+// Copyright 2024 HiveVM.ORG. All rights reserved.
+// SPDX-License-Identifier: MIT
+
+package org.hivevm.util.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.hivevm.util.Version;
+
+/**
+ * The {@link RevisionCache} caches the {@link Revision} of a repository, so that repeated requests
+ * for an unchanged repository don't walk the history again. The cache is held in memory for the
+ * process and in a file in the Git directory for later processes.
+ * <p>
+ * A revision is keyed by the HEAD commit, the current branch, a hash over all tag refs and the
+ * requested {@link Version}. Any commit, branch switch or tag update leads to a different key, so
+ * outdated revisions are never returned. The cache in memory holds the most recently used revisions
+ * up to the size of the file. A repository is loaded by one thread at a time, guarded by one of a
+ * fixed set of locks, the file is updated by the {@link RepositoryCacheFile}, so the updates of
+ * other processes aren't lost. If the file can't be written, the revision is loaded again later.
+ */
+final class RevisionCache {
+
+    private static final String FILE  = "hivevm/revisions";
+    private static final int    LIMIT = 64;
+
+    private static final Map<String, Revision> CACHE = new LinkedHashMap<>(16, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Revision> eldest) {
+            return size() > RevisionCache.LIMIT;
+        }
+    };
+    private static final Object[]              LOCKS = new Object[RevisionCache.LIMIT];
+
+    static {
+        for (int i = 0; i < RevisionCache.LIMIT; i++)
+            RevisionCache.LOCKS[i] = new Object();
+    }
+
+
+    /**
+     * Loads a {@link Revision} if it isn't available in the cache.
+     */
+    @FunctionalInterface
+    interface Loader {
+
+        Revision load() throws IOException;
+    }
+
+    /**
+     * The {@link RevisionCache} serves as a utility class.
+     */
+    private RevisionCache() {}
+
+    /**
+     * Retrieves the {@link Revision} of the repository for the version from the cache. If the
+     * revision isn't cached, it is loaded and stored in the cache.
+     */
+    public static Revision get(Repository repository, Version version, Loader loader)
+        throws IOException {
+        var head = repository.resolve(Constants.HEAD);
+        if (head == null)
+            return loader.load();
+
+        var location = (repository.getDirectory() == null) ? repository.toString()
+            : repository.getDirectory().getAbsolutePath();
+        var key = RevisionCache.getKey(repository, location, head, version);
+        var revision = RevisionCache.getCached(key);
+        if (revision != null)
+            return revision;
+
+        var file = (repository.getDirectory() == null) ? null
+            : new File(repository.getDirectory(), RevisionCache.FILE);
+        var lock = RevisionCache.LOCKS[Math.floorMod(location.hashCode(), RevisionCache.LIMIT)];
+        synchronized (lock) {
+            var entries = RevisionCache.read(file);
+            revision = entries.get(key);
+            if (revision == null) {
+                revision = loader.load();
+                RevisionCache.store(file, key, revision);
+            }
+        }
+        synchronized (RevisionCache.CACHE) {
+            RevisionCache.CACHE.put(key, revision);
+        }
+        return revision;
+    }
+
+    /**
+     * Clears the revisions held in memory, so they are read from the files again.
+     */
+    static void clear() {
+        synchronized (RevisionCache.CACHE) {
+            RevisionCache.CACHE.clear();
+        }
+    }
+
+    /**
+     * Gets the revision from the memory, or <code>null</code> if it isn't cached.
+     */
+    private static Revision getCached(String key) {
+        synchronized (RevisionCache.CACHE) {
+            return RevisionCache.CACHE.get(key);
+        }
+    }
+
+    /**
+     * Calculates the key of a revision, from the location of the repository, the HEAD commit, the
+     * branch, the tags and the requested version.
+     */
+    private static String getKey(Repository repository, String location, ObjectId head,
+        Version version) throws IOException {
+        try {
+            var digest = MessageDigest.getInstance("SHA-1");
+            RevisionCache.update(digest, location);
+            RevisionCache.update(digest, head.name());
+            RevisionCache.update(digest, repository.getBranch());
+            RevisionCache.update(digest, version.toString());
+
+            var tags = repository.getRefDatabase().getRefsByPrefix(Constants.R_TAGS).stream()
+                .sorted(Comparator.comparing(Ref::getName)).toList();
+            for (var tag : tags) {
+                RevisionCache.update(digest, tag.getName());
+                RevisionCache.update(digest, tag.getObjectId().name());
+            }
+            return ObjectId.fromRaw(digest.digest()).name();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Adds the text to the digest.
+     */
+    private static void update(MessageDigest digest, String text) {
+        digest.update(String.valueOf(text).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    /**
+     * Reads the cached revisions from the file. Invalid lines are ignored.
+     */
+    private static Map<String, Revision> read(File file) {
+        var entries = new LinkedHashMap<String, Revision>();
+        if ((file == null) || !file.exists())
+            return entries;
+
+        try {
+            for (var line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+                var values = line.split("\t", -1);
+                if (values.length == 8) {
+                    var time = OffsetDateTime.parse(values[2], DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+                    var version = Version.of(Integer.parseInt(values[3]),
+                        Integer.parseInt(values[4]), Integer.parseInt(values[5]),
+                        values[6].isEmpty() ? null : values[6],
+                        values[7].isEmpty() ? null : values[7]);
+                    entries.put(values[0], new Revision(values[1], time, version));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // An unreadable cache is recalculated
+        }
+        return entries;
+    }
+
+    /**
+     * Adds the revision to the file, which is read again while it is locked to keep the revisions
+     * of other processes. A failure is ignored, the revision is loaded again on the next request.
+     */
+    private static void store(File file, String key, Revision revision) {
+        if (file == null)
+            return;
+
+        try {
+            RepositoryCacheFile.update(file, () -> {
+                var entries = RevisionCache.read(file);
+                entries.put(key, revision);
+                RevisionCache.write(file, entries);
+            });
+        } catch (IOException | RuntimeException e) {
+            // An unwritable cache is recalculated
+        }
+    }
+
+    /**
+     * Writes the most recent revisions to the file.
+     */
+    private static void write(File file, Map<String, Revision> entries) throws IOException {
+        var text = entries.entrySet().stream()
+            .skip(Math.max(0, entries.size() - RevisionCache.LIMIT))
+            .map(e -> String.join("\t", e.getKey(), e.getValue().hash(),
+                e.getValue().isoTime(), "" + e.getValue().major(), "" + e.getValue().minor(),
+                "" + e.getValue().patch(), RevisionCache.toText(e.getValue().name()),
+                RevisionCache.toText(e.getValue().build())) + "\n")
+            .collect(Collectors.joining());
+        RepositoryCacheFile.write(file, text);
+    }
+
+    /**
+     * Converts an optional value into the text of the cache file.
+     */
+    private static String toText(String value) {
+        return (value == null) ? "" : value.replace('\t', ' ').replace('\n', ' ');
+    }
+}
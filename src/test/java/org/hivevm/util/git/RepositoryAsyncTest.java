@@ -0,0 +1,122 @@
+package org.hivevm.util.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+public class RepositoryAsyncTest {
+
+  @TempDir
+  File location;
+
+  private File createModule(String name) throws GitAPIException, IOException {
+    return RepositoryFixture.createRepository(new File(this.location, name), name);
+  }
+
+  private File createRoot() throws GitAPIException, IOException {
+    var root = new File(this.location, "root");
+    try (var git = RepositoryFixture.init(root)) {
+      for (var name : new String[] { "a", "b", "c" })
+        git.submoduleAdd().setPath(name).setURI(createModule(name).toURI().toString()).call().close();
+      RepositoryFixture.commit(git, "modules");
+    }
+    return root;
+  }
+
+  @Test
+  public void testSubmitEach() throws Exception {
+    var root = createRoot();
+    var executor = Executors.newCachedThreadPool();
+    try (var repository = new Repository(Git.open(root), null, new RepositoryOptions())) {
+      var async = repository.async(executor, Duration.ofSeconds(30));
+      var futures = async.submitEach(r -> r.getCommit("HEAD").getShortMessage());
+      Assertions.assertEquals(3, futures.size());
+      CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get();
+      Assertions.assertEquals("a", futures.get(0).get().value());
+      Assertions.assertEquals("c", futures.get(2).get().value());
+      Assertions.assertTrue(futures.get(1).get().isSuccessful());
+
+      var result = async.submit(r -> r.getCommit("unknown")).get();
+      Assertions.assertEquals(root, result.location());
+      Assertions.assertNull(result.value());
+
+      var tag = async.tag("v1.0").get();
+      Assertions.assertTrue(tag.isSuccessful());
+      Assertions.assertNotNull(repository.getGit().getRepository().findRef("v1.0"));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Waits until the operation is cancelled by the monitor of the repository. Returns whether the
+   * operation has been cancelled without interrupting the thread.
+   */
+  private static boolean awaitCancel(Repository repository, CountDownLatch started)
+      throws InterruptedException {
+    started.countDown();
+    var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (!repository.getMonitor().isCancelled() && (System.nanoTime() < deadline))
+      Thread.onSpinWait();
+    return repository.getMonitor().isCancelled() && !Thread.currentThread().isInterrupted();
+  }
+
+  @Test
+  public void testTimeout() throws Exception {
+    var root = createRoot();
+    var executor = Executors.newCachedThreadPool();
+    var started = new CountDownLatch(1);
+    var cancelled = new CompletableFuture<Boolean>();
+    try (var repository = new Repository(Git.open(root), null, new RepositoryOptions())) {
+      var future = repository.async(executor, Duration.ofMillis(100)).submit(r -> {
+        try {
+          cancelled.complete(awaitCancel(r, started));
+        } catch (InterruptedException e) {
+          cancelled.complete(false);
+        }
+        return null;
+      });
+      var exception = Assertions.assertThrows(ExecutionException.class, () -> future.get());
+      Assertions.assertTrue(exception.getCause() instanceof TimeoutException);
+      Assertions.assertTrue(cancelled.get(15, TimeUnit.SECONDS));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testCancel() throws Exception {
+    var root = createRoot();
+    var executor = Executors.newCachedThreadPool();
+    var started = new CountDownLatch(1);
+    var cancelled = new CompletableFuture<Boolean>();
+    try (var repository = new Repository(Git.open(root), null, new RepositoryOptions())) {
+      var futures = repository.async(executor, null).submitEach(r -> {
+        try {
+          cancelled.complete(awaitCancel(r, started));
+        } catch (InterruptedException e) {
+          cancelled.complete(false);
+        }
+        return null;
+      });
+      Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+      futures.forEach(f -> f.cancel(true));
+      Assertions.assertTrue(cancelled.get(15, TimeUnit.SECONDS));
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
@@ -0,0 +1,54 @@
+package org.hivevm.util.git;
+
+import java.io.File;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+public class RepositoryBacklogTest {
+
+  private static final Pattern BACKLOG = Pattern.compile("(\\w+)\\s*-\\s*(?<key>\\d+)\\s*-[^\\n]+", Pattern.MULTILINE);
+
+  @TempDir
+  File location;
+
+  @Test
+  public void testRange() throws Exception {
+    try (var git = RepositoryFixture.init(this.location)) {
+      RepositoryFixture.commit(git, "HOTEL-1 - initial");
+      git.branchCreate().setName("release").call();
+      for (int i = 0; i < 300; i++)
+        RepositoryFixture.commit(git, "CORE-" + (100 + i) + " - change " + i);
+      RepositoryFixture.commit(git, "no backlog");
+
+      git.checkout().setName("release").call();
+      RepositoryFixture.commit(git, "CORE-5 - fix\n\nCORE-6 - follow-up");
+      git.checkout().setName("main").call();
+
+      try (var repository = new Repository(git, null, new RepositoryOptions())) {
+        var backlog = repository.backlog(BACKLOG);
+        try (var entries = backlog.stream("release", "main")) {
+          var list = entries.toList();
+          Assertions.assertEquals(301, list.size());
+          Assertions.assertEquals(List.of(), list.get(0).keys());
+          Assertions.assertEquals(List.of("399"), list.get(1).keys());
+          Assertions.assertEquals(List.of("100"), list.get(300).keys());
+        }
+        Assertions.assertEquals(301, backlog.getCacheSize());
+
+        Assertions.assertEquals(Set.of("5", "6"), backlog.getKeys("main", "release"));
+        Assertions.assertEquals(302, backlog.getCacheSize());
+
+        var keys = backlog.streamSinceMergeBase("main", "release").flatMap(e -> e.keys().stream()).toList();
+        Assertions.assertEquals(List.of("5", "6"), keys);
+        Assertions.assertEquals(301, backlog.getKeys(null, "main").size());
+        Assertions.assertEquals(303, backlog.getCacheSize());
+      }
+    }
+  }
+}
@@ -0,0 +1,225 @@
+package org.hivevm.util.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.errors.CheckoutConflictException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+public class RepositoryCheckoutTest {
+
+  private static final int MODULES = 30;
+  private static final int FILES   = 200;
+
+  @TempDir
+  File location;
+
+  /**
+   * Creates a repository with a number of files and two commits, which differ in a few files.
+   */
+  private static List<RevCommit> createModule(File location) throws GitAPIException, IOException {
+    try (var git = RepositoryFixture.init(location)) {
+      for (int i = 0; i < FILES; i++) {
+        var file = new File(location, "dir" + (i % 10) + "/file" + i + ".txt");
+        file.getParentFile().mkdirs();
+        Files.writeString(file.toPath(), "content " + i);
+      }
+      git.add().addFilepattern(".").call();
+      var first = RepositoryFixture.commit(git, "first");
+      for (int i = 0; i < 3; i++)
+        Files.writeString(new File(location, "dir" + i + "/file" + i + ".txt").toPath(), "changed " + i);
+      git.add().addFilepattern(".").call();
+      var second = RepositoryFixture.commit(git, "second");
+      return List.of(first, second);
+    }
+  }
+
+  /**
+   * The former checkout, which renames, deletes and recreates the branch.
+   */
+  private static void checkoutLegacy(Git git, RevCommit commit, String branch) throws GitAPIException {
+    var hash = commit.getId().getName();
+    git.branchRename().setNewName(hash).setOldName(branch).call();
+    git.branchDelete().setBranchNames(branch).setForce(true).call();
+    git.checkout().setCreateBranch(true).setName(branch).setStartPoint(commit).call();
+    git.branchDelete().setBranchNames(hash).setForce(true).call();
+  }
+
+  private static void assertCheckout(Git git, RevCommit commit) throws GitAPIException, IOException {
+    Assertions.assertEquals(commit.getId(), git.getRepository().resolve("HEAD"));
+    Assertions.assertEquals("main", git.getRepository().getBranch());
+    Assertions.assertTrue(git.status().call().isClean());
+  }
+
+  @Test
+  public void testCheckout() throws GitAPIException, IOException {
+    var legacy = new ArrayList<List<RevCommit>>();
+    var modules = new ArrayList<List<RevCommit>>();
+    for (int i = 0; i < MODULES; i++) {
+      legacy.add(createModule(new File(this.location, "legacy" + i)));
+      modules.add(createModule(new File(this.location, "module" + i)));
+    }
+
+    var time = System.nanoTime();
+    for (int i = 0; i < MODULES; i++) {
+      try (var git = Git.open(new File(this.location, "legacy" + i))) {
+        checkoutLegacy(git, legacy.get(i).get(0), "main");
+        checkoutLegacy(git, legacy.get(i).get(1), "main");
+      }
+    }
+    var timeLegacy = System.nanoTime() - time;
+
+    time = System.nanoTime();
+    for (int i = 0; i < MODULES; i++) {
+      var git = Git.open(new File(this.location, "module" + i));
+      try (var repository = new Repository(git, null, new RepositoryOptions())) {
+        repository.checkout(modules.get(i).get(0), "main");
+        repository.checkout(modules.get(i).get(1), "main");
+        Assertions.assertTrue(repository.getExceptions().isEmpty());
+      }
+    }
+    var timeCheckout = System.nanoTime() - time;
+
+    System.out.printf("Checkout of %d modules: legacy %d ms, ref update %d ms\n", MODULES,
+        timeLegacy / 1000000, timeCheckout / 1000000);
+
+    for (int i = 0; i < MODULES; i++) {
+      try (var git = Git.open(new File(this.location, "legacy" + i))) {
+        assertCheckout(git, legacy.get(i).get(1));
+      }
+      try (var git = Git.open(new File(this.location, "module" + i))) {
+        assertCheckout(git, modules.get(i).get(1));
+        var file = new File(this.location, "module" + i + "/dir0/file0.txt");
+        Assertions.assertEquals("changed 0", Files.readString(file.toPath()));
+      }
+    }
+  }
+
+  @Test
+  public void testConflicts() throws GitAPIException, IOException {
+    var module = new File(this.location, "module");
+    var commits = createModule(module);
+    RevCommit added;
+    try (var git = Git.open(module)) {
+      Files.writeString(new File(module, "added.txt").toPath(), "upstream");
+      git.add().addFilepattern("added.txt").call();
+      added = RepositoryFixture.commit(git, "added");
+    }
+
+    var git = Git.open(module);
+    try (var repository = new Repository(git, null, new RepositoryOptions())) {
+      repository.checkout(commits.get(0), "main");
+      var modified = new File(module, "dir0/file0.txt");
+      Files.writeString(modified.toPath(), "MY LOCAL WORK");
+      Assertions.assertThrows(CheckoutConflictException.class, () -> repository.checkout(commits.get(1), "main"));
+      Assertions.assertEquals("MY LOCAL WORK", Files.readString(modified.toPath()));
+      Assertions.assertEquals(commits.get(0).getId(), git.getRepository().resolve("HEAD"));
+
+      Files.writeString(modified.toPath(), "content 0");
+      repository.checkout(commits.get(1), "main");
+      var untracked = new File(module, "added.txt");
+      Files.writeString(untracked.toPath(), "MY LOCAL WORK");
+      Assertions.assertThrows(CheckoutConflictException.class, () -> repository.checkout(added, "main"));
+      Assertions.assertEquals("MY LOCAL WORK", Files.readString(untracked.toPath()));
+
+      Files.writeString(untracked.toPath(), "upstream");
+      repository.checkout(added, "main");
+      Assertions.assertEquals(added.getId(), git.getRepository().resolve("HEAD"));
+      Assertions.assertTrue(git.status().call().isClean());
+    }
+  }
+
+  @Test
+  public void testSkipPositioned() throws GitAPIException, IOException {
+    var clean = createModule(new File(this.location, "clean"));
+    var dirty = createModule(new File(this.location, "dirty"));
+
+    var root = new File(this.location, "root");
+    try (var git = RepositoryFixture.init(root)) {
+      git.submoduleAdd().setPath("clean").setURI(new File(this.location, "clean").toURI().toString()).call().close();
+      git.submoduleAdd().setPath("dirty").setURI(new File(this.location, "dirty").toURI().toString()).call().close();
+      RepositoryFixture.commit(git, "modules");
+    }
+    Files.writeString(new File(root, "dirty/dir0/file0.txt").toPath(), "local");
+
+    var git = Git.open(root);
+    try (var repository = new Repository(git, null, new RepositoryOptions())) {
+      repository.checkout();
+      Assertions.assertTrue(repository.getExceptions().isEmpty());
+    }
+
+    try (var module = Git.open(new File(root, "clean"))) {
+      Assertions.assertNull(module.getRepository().findRef(Constants.R_STASH));
+      Assertions.assertEquals(clean.get(1).getId(), module.getRepository().resolve("HEAD"));
+      Assertions.assertEquals(1, module.reflog().setRef("refs/heads/main").call().size());
+    }
+    try (var module = Git.open(new File(root, "dirty"))) {
+      Assertions.assertNotNull(module.getRepository().findRef(Constants.R_STASH));
+      Assertions.assertEquals(dirty.get(1).getId(), module.getRepository().resolve("HEAD"));
+      Assertions.assertTrue(module.status().call().isClean());
+    }
+  }
+
+  @Test
+  public void testDetached() throws GitAPIException, IOException {
+    var module = new File(this.location, "module");
+    var commits = createModule(module);
+
+    var git = Git.open(module);
+    try (var repository = new Repository(git, null, new RepositoryOptions())) {
+      git.checkout().setName(commits.get(0).name()).call();
+      repository.checkout(commits.get(1));
+      Assertions.assertTrue(repository.getExceptions().isEmpty());
+
+      var head = git.getRepository().exactRef(Constants.HEAD);
+      Assertions.assertFalse(head.isSymbolic());
+      Assertions.assertEquals(commits.get(1).getId(), head.getObjectId());
+      Assertions.assertNull(git.getRepository().exactRef(Constants.R_HEADS + commits.get(0).name()));
+      Assertions.assertEquals(commits.get(1).getId(), git.getRepository().resolve("refs/heads/main"));
+      Assertions.assertEquals("changed 0", Files.readString(new File(module, "dir0/file0.txt").toPath()));
+      Assertions.assertTrue(git.status().call().isClean());
+    }
+  }
+
+  @Test
+  public void testNoBranch() throws GitAPIException, IOException {
+    var module = new File(this.location, "module");
+    var commits = createModule(module);
+
+    var git = Git.open(module);
+    try (var repository = new Repository(git, null, new RepositoryOptions())) {
+      Assertions.assertThrows(IllegalArgumentException.class, () -> repository.checkout(commits.get(0), null));
+      Assertions.assertNull(git.getRepository().exactRef("refs/heads/null"));
+      Assertions.assertEquals(commits.get(1).getId(), git.getRepository().resolve("HEAD"));
+    }
+  }
+
+  @Test
+  public void testRollback() throws GitAPIException, IOException {
+    var module = new File(this.location, "module");
+    var commits = createModule(module);
+
+    var git = Git.open(module);
+    try (var repository = new Repository(git, null, new RepositoryOptions())) {
+      var modified = new File(module, "dir0/file0.txt");
+      Files.writeString(modified.toPath(), "MY LOCAL WORK");
+      Assertions.assertThrows(CheckoutConflictException.class, () -> repository.checkout(commits.get(0), "main"));
+      Assertions.assertEquals(commits.get(1).getId(), git.getRepository().resolve("refs/heads/main"));
+
+      Assertions.assertThrows(CheckoutConflictException.class, () -> repository.checkout(commits.get(0), "other"));
+      Assertions.assertNull(git.getRepository().exactRef("refs/heads/other"));
+      Assertions.assertEquals("main", git.getRepository().getBranch());
+      Assertions.assertEquals("MY LOCAL WORK", Files.readString(modified.toPath()));
+    }
+  }
+}
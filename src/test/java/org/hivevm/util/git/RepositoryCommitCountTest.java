@@ -0,0 +1,84 @@
+package org.hivevm.util.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.StreamSupport;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+public class RepositoryCommitCountTest {
+
+  @TempDir
+  File location;
+
+  /**
+   * Creates a history on the main line with merged side branches.
+   */
+  private Git createHistory(int commits) throws GitAPIException, IOException {
+    var git = RepositoryFixture.init(this.location);
+    for (int i = 0; i < commits; i++) {
+      RepositoryFixture.commitFile(git, "file" + (i % 5), "v" + i);
+      if ((i % 50) == 10) {
+        git.checkout().setCreateBranch(true).setName("side" + i).call();
+        for (int k = 0; k < 5; k++)
+          RepositoryFixture.commitFile(git, "side" + i + k, "s" + k);
+        git.checkout().setName("main").call();
+        RepositoryFixture.commitFile(git, "main" + i, "m" + i);
+        git.merge().include(git.getRepository().resolve("side" + i)).setMessage("merge").call();
+      }
+    }
+    return git;
+  }
+
+  @Test
+  public void testCommitCount() throws GitAPIException, IOException {
+    try (var git = createHistory(120)) {
+      var head = git.getRepository().parseCommit(git.getRepository().resolve("HEAD"));
+      var expected = StreamSupport.stream(git.log().call().spliterator(), false).count();
+      Assertions.assertEquals(expected, RepositoryVersion.getCommitCount(git, head));
+      Assertions.assertTrue(new File(git.getRepository().getDirectory(), "hivevm/commit-count").exists());
+
+      RepositoryFixture.commitFile(git, "next", "next");
+      head = git.getRepository().parseCommit(git.getRepository().resolve("HEAD"));
+      Assertions.assertEquals(expected + 1, RepositoryVersion.getCommitCount(git, head));
+    }
+  }
+
+  @Test
+  public void testCompaction() throws GitAPIException, IOException {
+    try (var git = RepositoryFixture.init(this.location)) {
+      var counter = new RepositoryCommitCount(git.getRepository());
+      for (int i = 0; i <= 4096; i++)
+        counter.put(ObjectId.fromRaw(new int[] { i, 0, 0, 0, 0 }), i);
+
+      var directory = new File(git.getRepository().getDirectory(), "hivevm");
+      Assertions.assertEquals(List.of("commit-count", "commit-count.lock"),
+          Arrays.stream(directory.list()).sorted().toList());
+      var lines = Files.readAllLines(new File(directory, "commit-count").toPath());
+      Assertions.assertEquals(2048, lines.size());
+      Assertions.assertTrue(lines.get(lines.size() - 1).endsWith(" 4096"));
+    }
+  }
+
+  @Test
+  public void testUnwritable() throws GitAPIException, IOException {
+    try (var git = createHistory(20)) {
+      Files.writeString(new File(git.getRepository().getDirectory(), "hivevm").toPath(), "");
+
+      // A cache that can't be written is a cache miss
+      var head = git.getRepository().parseCommit(git.getRepository().resolve("HEAD"));
+      var expected = StreamSupport.stream(git.log().call().spliterator(), false).count();
+      Assertions.assertEquals(expected, RepositoryVersion.getCommitCount(git, head));
+      Assertions.assertEquals(expected, RepositoryVersion.getCommitCount(git, head));
+    }
+  }
+}
@@ -0,0 +1,107 @@
+package org.hivevm.util.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+public class RepositoryExecutorTest {
+
+  private static final String[] MODULES = { "a", "b", "c", "d", "e", "f" };
+
+  @TempDir
+  File location;
+
+  /**
+   * Tracks the number of tasks that run at once.
+   */
+  private static class Concurrency {
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger max    = new AtomicInteger();
+
+    private void run() {
+      this.max.accumulateAndGet(this.active.incrementAndGet(), Math::max);
+      try {
+        Thread.sleep(100);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        this.active.decrementAndGet();
+      }
+    }
+  }
+
+  private static RepositoryOptions options(int parallelism, int hostLimit) {
+    var options = new RepositoryOptions();
+    options.setParallelism(parallelism);
+    options.setHostLimit(hostLimit);
+    return options;
+  }
+
+  @Test
+  public void testHostLimit() {
+    var hosts = new ConcurrentHashMap<String, Concurrency>();
+    var total = new Concurrency();
+    var exceptions = new ConcurrentLinkedQueue<Exception>();
+    try (var executor = new RepositoryExecutor(options(4, 1), exceptions::add)) {
+      for (int i = 0; i < 8; i++) {
+        var host = (i % 2 == 0) ? "a.example.org" : "b.example.org";
+        var concurrency = hosts.computeIfAbsent(host, h -> new Concurrency());
+        executor.submit("https://" + host + "/module" + i + ".git", () -> {
+          total.max.accumulateAndGet(total.active.incrementAndGet(), Math::max);
+          concurrency.run();
+          total.active.decrementAndGet();
+        });
+      }
+    }
+
+    Assertions.assertTrue(exceptions.isEmpty());
+    Assertions.assertEquals(1, hosts.get("a.example.org").max.get());
+    Assertions.assertEquals(1, hosts.get("b.example.org").max.get());
+    Assertions.assertEquals(2, total.max.get());
+  }
+
+  @Test
+  public void testForAll() throws GitAPIException, IOException {
+    var root = new File(this.location, "root");
+    try (var git = RepositoryFixture.init(root)) {
+      for (var name : RepositoryExecutorTest.MODULES) {
+        var module = new File(this.location, name);
+        try (var sub = RepositoryFixture.init(module)) {
+          RepositoryFixture.commit(sub, name);
+        }
+        git.submoduleAdd().setPath(name).setURI(module.toURI().toString()).call().close();
+      }
+      RepositoryFixture.commit(git, "modules");
+    }
+
+    var visited = ConcurrentHashMap.<String>newKeySet();
+    var concurrency = new Concurrency();
+    try (var repository = new Repository(Git.open(root), null, options(4, 2))) {
+      repository.forAll(r -> {
+        var name = r.getLocation().getName();
+        visited.add(name);
+        concurrency.run();
+        if (name.equals("c"))
+          throw new IllegalStateException(name);
+      });
+
+      var exceptions = repository.getExceptions();
+      Assertions.assertEquals(1, exceptions.size());
+      Assertions.assertEquals("c", exceptions.get(0).getMessage());
+    }
+
+    Assertions.assertEquals(Set.of(RepositoryExecutorTest.MODULES), visited);
+    Assertions.assertEquals(2, concurrency.max.get());
+  }
+}
@@ -0,0 +1,165 @@
+package org.hivevm.util.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.ResetCommand.ResetType;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.transport.RefSpec;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+public class RepositoryFetchPlanTest {
+
+  private static final String[] MODULES = { "a", "b", "c" };
+
+  @TempDir
+  File location;
+
+  /**
+   * Adds the upstream repositories as submodules to the work tree of the upstream.
+   */
+  private void addModules(String name, String... modules) throws GitAPIException, IOException {
+    try (var git = Git.open(RepositoryFixture.getWork(this.location, name))) {
+      for (var module : modules)
+        git.submoduleAdd().setPath(module)
+            .setURI(new File(this.location, module + ".git").getAbsolutePath()).call().close();
+      RepositoryFixture.commit(git, "modules");
+      git.push().setRefSpecs(new RefSpec("HEAD:refs/heads/main")).call();
+    }
+  }
+
+  @Test
+  public void testNested() throws GitAPIException, IOException {
+    var upstream = RepositoryFixture.createUpstream(this.location, "root");
+    for (var name : RepositoryFetchPlanTest.MODULES)
+      RepositoryFixture.createUpstream(this.location, name);
+    addModules("a", "c");
+    addModules("root", "a", "b");
+
+    var clone = new File(this.location, "clone");
+    Git.cloneRepository().setURI(upstream.getAbsolutePath()).setDirectory(clone)
+        .setCloneSubmodules(true).call().close();
+    try (var module = Git.open(new File(clone, "a"))) {
+      module.submoduleInit().call();
+      module.submoduleUpdate().call();
+    }
+
+    List<RepositoryEvent> events = new CopyOnWriteArrayList<>();
+    var options = new RepositoryOptions();
+    options.setParallelism(4);
+    options.addListener(events::add);
+    try (var repository = new Repository(Git.open(clone), null, options)) {
+      repository.fetch();
+      Assertions.assertTrue(repository.getExceptions().isEmpty());
+      var fetched = events.stream().filter(e -> "fetch".equals(e.operation()))
+          .map(e -> e.location().getName()).sorted().toList();
+      Assertions.assertEquals(List.of("a", "b", "c", "clone"), fetched);
+    }
+  }
+
+  /**
+   * Checks out the commit of the module in the work tree of the root and pushes the gitlink to the
+   * branch.
+   */
+  private void updateGitlink(String module, ObjectId id, String branch) throws GitAPIException, IOException {
+    var work = RepositoryFixture.getWork(this.location, "root");
+    try (var git = Git.open(work); var sub = Git.open(new File(work, module))) {
+      sub.fetch().call();
+      sub.checkout().setName(id.name()).call();
+      git.add().addFilepattern(module).call();
+      RepositoryFixture.commit(git, "update " + module);
+      git.push().setRefSpecs(new RefSpec("HEAD:refs/heads/" + branch)).call();
+    }
+  }
+
+  /**
+   * Creates a branch, whose history has a gitlink that has been removed from the module by a
+   * forced push. Only the gitlinks of the new commits are fetched, and a gitlink the remote doesn't
+   * serve anymore is skipped.
+   */
+  @Test
+  public void testNewBranch() throws GitAPIException, IOException {
+    var upstream = RepositoryFixture.createUpstream(this.location, "root");
+    RepositoryFixture.createUpstream(this.location, "a");
+    addModules("root", "a");
+
+    ObjectId removed;
+    try (var module = Git.open(RepositoryFixture.getWork(this.location, "a"))) {
+      var first = module.getRepository().resolve("HEAD");
+      removed = RepositoryFixture.push(module, "removed");
+      updateGitlink("a", removed, "main");
+
+      module.reset().setMode(ResetType.HARD).setRef(first.name()).call();
+      var replaced = RepositoryFixture.commitFile(module, RepositoryFixture.FILE, "replaced");
+      module.push().setForce(true).setRefSpecs(new RefSpec("HEAD:refs/heads/main")).call();
+      updateGitlink("a", replaced, "main");
+    }
+
+    var builder = new RepositoryBuilder(new File(this.location, "clone")).setRemote(upstream.getAbsolutePath())
+        .setBranch("main").addSubModules("a");
+    try (var repository = builder.build()) {
+      try (var git = Git.open(RepositoryFixture.getWork(this.location, "root"))) {
+        RepositoryFixture.commit(git, "feature");
+        git.push().setRefSpecs(new RefSpec("HEAD:refs/heads/feature")).call();
+      }
+      repository.fetch();
+      Assertions.assertTrue(repository.getExceptions().isEmpty());
+
+      updateGitlink("a", removed, "feature");
+      repository.fetch();
+      Assertions.assertTrue(repository.getExceptions().isEmpty());
+      Assertions.assertNotNull(repository.getGit().getRepository().exactRef("refs/remotes/origin/feature"));
+    }
+  }
+
+  @Test
+  public void testOnDemand() throws GitAPIException, IOException {
+    var upstream = RepositoryFixture.createUpstream(this.location, "root");
+    try (var git = Git.open(RepositoryFixture.getWork(this.location, "root"))) {
+      for (var name : RepositoryFetchPlanTest.MODULES)
+        git.submoduleAdd().setPath(name)
+            .setURI(RepositoryFixture.createUpstream(this.location, name).getAbsolutePath()).call().close();
+      RepositoryFixture.commit(git, "modules");
+      git.push().setRefSpecs(new RefSpec("HEAD:refs/heads/main")).call();
+    }
+
+    List<RepositoryEvent> events = new CopyOnWriteArrayList<>();
+    var builder = new RepositoryBuilder(new File(this.location, "clone")).setRemote(upstream.getAbsolutePath())
+        .setBranch("main").addSubModules(RepositoryFetchPlanTest.MODULES).setFetchOnDemand(true)
+        .addListener(events::add);
+    try (var repository = builder.build()) {
+      events.clear();
+      repository.fetch();
+      Assertions.assertEquals(1, events.stream().filter(e -> "fetch".equals(e.operation())).count());
+
+      ObjectId changed;
+      try (var module = Git.open(RepositoryFixture.getWork(this.location, "b"))) {
+        changed = RepositoryFixture.push(module, "b changed");
+      }
+      try (var git = Git.open(RepositoryFixture.getWork(this.location, "root"))) {
+        try (var module = Git.open(new File(RepositoryFixture.getWork(this.location, "root"), "b"))) {
+          module.pull().call();
+        }
+        git.add().addFilepattern("b").call();
+        RepositoryFixture.commit(git, "update b");
+        git.push().setRefSpecs(new RefSpec("HEAD:refs/heads/main")).call();
+      }
+
+      events.clear();
+      repository.fetch();
+      Assertions.assertTrue(repository.getExceptions().isEmpty());
+      var fetched = events.stream().filter(e -> "fetch".equals(e.operation())).map(e -> e.location().getName()).sorted().toList();
+      Assertions.assertEquals(List.of("b", "clone"), fetched);
+      try (var module = Git.open(new File(this.location, "clone/b"))) {
+        Assertions.assertTrue(module.getRepository().getObjectDatabase().has(changed));
+      }
+    }
+  }
+}
@@ -0,0 +1,100 @@
+package org.hivevm.util.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.transport.RefSpec;
+
+
+/**
+ * Creates the repositories and commits the tests are working on.
+ */
+final class RepositoryFixture {
+
+  static final String FILE = "file.txt";
+
+  private RepositoryFixture() {}
+
+  /**
+   * Creates a repository with a work tree on the main branch.
+   */
+  static Git init(File location) throws GitAPIException {
+    return Git.init().setDirectory(location).setInitialBranch("main").call();
+  }
+
+  /**
+   * Creates a repository with a work tree and a single commit of the {@link #FILE}.
+   */
+  static File createRepository(File location, String content) throws GitAPIException, IOException {
+    try (var git = RepositoryFixture.init(location)) {
+      RepositoryFixture.commitFile(git, RepositoryFixture.FILE, content);
+    }
+    return location;
+  }
+
+  /**
+   * Creates the bare upstream repository <code>name.git</code> in the directory, with a single
+   * commit on the main branch. The commit is pushed from the work tree <code>name-work</code>,
+   * which can be used to push further commits.
+   */
+  static File createUpstream(File directory, String name) throws GitAPIException, IOException {
+    var upstream = new File(directory, name + ".git");
+    Git.init().setDirectory(upstream).setBare(true).setInitialBranch("main").call().close();
+    try (var git = Git.cloneRepository().setURI(upstream.getAbsolutePath())
+        .setDirectory(RepositoryFixture.getWork(directory, name)).call()) {
+        RepositoryFixture.push(git, name);
+    }
+    return upstream;
+  }
+
+  /**
+   * Gets the work tree of the upstream repository.
+   */
+  static File getWork(File directory, String name) {
+    return new File(directory, name + "-work");
+  }
+
+  /**
+   * Creates an empty commit.
+   */
+  static RevCommit commit(Git git, String message) throws GitAPIException {
+    return git.commit().setMessage(message).setAllowEmpty(true).setSign(false).call();
+  }
+
+  /**
+   * Creates an empty commit with the time as author and committer time.
+   */
+  static RevCommit commit(Git git, String message, Instant time) throws GitAPIException {
+    var ident = new PersonIdent("test", "test@hivevm.org", time, ZoneOffset.UTC);
+    return git.commit().setMessage(message).setAllowEmpty(true).setAuthor(ident)
+        .setCommitter(ident).setSign(false).call();
+  }
+
+  /**
+   * Writes the content to the file and commits it, using the content as message.
+   */
+  static RevCommit commitFile(Git git, String name, String content)
+      throws GitAPIException, IOException {
+      var file = new File(git.getRepository().getWorkTree(), name);
+      file.getParentFile().mkdirs();
+      Files.writeString(file.toPath(), content);
+      git.add().addFilepattern(name).call();
+      return git.commit().setMessage(content).setSign(false).call();
+  }
+
+  /**
+   * Commits the content of the {@link #FILE} and pushes it to the main branch of the upstream.
+   */
+  static RevCommit push(Git git, String content) throws GitAPIException, IOException {
+    var commit = RepositoryFixture.commitFile(git, RepositoryFixture.FILE, content);
+    git.push().setRefSpecs(new RefSpec("HEAD:refs/heads/main")).call();
+    return commit;
+  }
+}
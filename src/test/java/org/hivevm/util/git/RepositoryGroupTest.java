@@ -0,0 +1,56 @@
+package org.hivevm.util.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+public class RepositoryGroupTest {
+
+  @TempDir
+  File location;
+
+  private File createRemote(String name) throws GitAPIException, IOException {
+    return RepositoryFixture.createRepository(new File(this.location, "remote/" + name), name);
+  }
+
+  @Test
+  public void testManifest() throws Exception {
+    var manifest = new File(this.location, "manifest.txt");
+    var lines = new StringBuilder("# workspace\n\n");
+    for (var name : new String[] { "a", "b", "c" })
+      lines.append("work/%s %s main\n".formatted(name, createRemote(name).toURI()));
+    lines.append("work/d %s\n".formatted(new File(this.location, "remote/d").toURI()));
+    Files.writeString(manifest.toPath(), lines);
+
+    var entries = RepositoryGroup.readManifest(manifest);
+    Assertions.assertEquals(4, entries.size());
+    Assertions.assertEquals(new File(this.location, "work/a"), entries.get(0).location());
+    Assertions.assertEquals("main", entries.get(0).branch());
+    Assertions.assertNull(entries.get(3).branch());
+
+    try (var group = new RepositoryGroup(entries, 4, 2)) {
+      var built = group.build();
+      Assertions.assertEquals(4, built.size());
+      Assertions.assertTrue(built.get(0).isSuccessful());
+      Assertions.assertTrue(built.get(2).isSuccessful());
+      Assertions.assertFalse(built.get(3).isSuccessful());
+      Assertions.assertTrue(new File(this.location, "work/b/file.txt").exists());
+
+      var tagged = group.tag("v1.0");
+      Assertions.assertTrue(tagged.get(1).isSuccessful());
+      Assertions.assertFalse(tagged.get(3).isSuccessful());
+      Assertions.assertNotNull(built.get(1).value().getGit().getRepository().findRef("v1.0"));
+
+      var fetched = group.fetch();
+      Assertions.assertEquals(4, fetched.size());
+      Assertions.assertTrue(fetched.get(0).isSuccessful());
+      Assertions.assertEquals(new File(this.location, "work/c"), fetched.get(2).location());
+    }
+  }
+}
@@ -0,0 +1,76 @@
+package org.hivevm.util.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.transport.RefSpec;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+public class RepositoryHistogramTest {
+
+  @TempDir
+  File location;
+
+  private static RepositoryEvent event(String operation, long millis) {
+    return new RepositoryEvent(operation, null, Duration.ofMillis(millis), 0, 0, 0, false);
+  }
+
+  @Test
+  public void testPercentile() {
+    var histogram = new RepositoryHistogram();
+    for (int i = 1; i <= 1000; i++)
+      histogram.onEvent(event("fetch", i));
+    histogram.onEvent(event("checkout", 5));
+
+    Assertions.assertEquals(1000, histogram.getCount("fetch"));
+    Assertions.assertEquals(0, histogram.getCount("pull"));
+    Assertions.assertEquals(Duration.ZERO, histogram.getPercentile("pull", 50));
+
+    var p50 = histogram.getPercentile("fetch", 50).toMillis();
+    var p99 = histogram.getPercentile("fetch", 99).toMillis();
+    Assertions.assertTrue(Math.abs(p50 - 500) <= 500 * 0.07, "p50 " + p50);
+    Assertions.assertTrue(Math.abs(p99 - 990) <= 990 * 0.07, "p99 " + p99);
+    Assertions.assertTrue(histogram.getPercentile("fetch", 100).toMillis() >= 1000);
+    Assertions.assertEquals(5, histogram.getPercentile("checkout", 99).toMillis());
+  }
+
+  @Test
+  public void testEvents() throws GitAPIException, IOException {
+    var upstream = RepositoryFixture.createUpstream(this.location, "upstream");
+    try (var git = Git.open(RepositoryFixture.getWork(this.location, "upstream"))) {
+      for (int i = 0; i < 2; i++)
+        RepositoryFixture.commitFile(git, "README", "commit " + i);
+      git.push().setRefSpecs(new RefSpec("HEAD:refs/heads/main")).call();
+    }
+
+    List<RepositoryEvent> events = new CopyOnWriteArrayList<>();
+    var histogram = new RepositoryHistogram();
+    var builder = new RepositoryBuilder(new File(this.location, "clone")).setRemote(upstream.getAbsolutePath())
+        .setBranch("main").addListener(events::add).addListener(histogram);
+    try (var repository = builder.build()) {
+      Files.writeString(new File(repository.getLocation(), "README").toPath(), "changed");
+      repository.commit("changed");
+      repository.fetch();
+      Assertions.assertTrue(repository.getExceptions().isEmpty());
+    }
+
+    var clone = events.stream().filter(e -> e.operation().equals("clone")).findFirst().get();
+    Assertions.assertEquals(9, clone.objects());
+    Assertions.assertTrue(clone.bytes() > 0);
+    Assertions.assertTrue(clone.refs() > 0);
+    Assertions.assertFalse(clone.failed());
+    Assertions.assertEquals(1, histogram.getCount("commit"));
+    Assertions.assertEquals(1, histogram.getCount("fetch"));
+    Assertions.assertTrue(histogram.getOperations().contains("submodules"));
+    Assertions.assertTrue(histogram.toString().contains("commit: count=1"));
+  }
+}
@@ -0,0 +1,55 @@
+package org.hivevm.util.git;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+public class RepositoryInMemoryTest {
+
+  @TempDir
+  File location;
+
+  private static ObjectId commit(Git git, String name, String content) throws GitAPIException, IOException {
+    RepositoryFixture.commitFile(git, name, content);
+    return git.getRepository().resolve("HEAD:" + name);
+  }
+
+  @Test
+  public void testBlobless() throws GitAPIException, IOException {
+    var upstream = new File(this.location, "upstream");
+    try (var git = RepositoryFixture.init(upstream)) {
+      var config = git.getRepository().getConfig();
+      config.setBoolean("uploadpack", null, "allowfilter", true);
+      config.save();
+
+      var blob = commit(git, "a.txt", "a");
+      git.tag().setName("v1.0").call();
+
+      var target = new File(this.location, "memory");
+      var builder = new RepositoryBuilder(target).setRemote(upstream.getAbsolutePath()).setInMemory(true);
+      try (var repository = builder.build()) {
+        Assertions.assertFalse(target.exists());
+        Assertions.assertNull(repository.getLocation());
+        Assertions.assertEquals("main", repository.getBranch());
+        Assertions.assertEquals("a", repository.getCommit("HEAD").getShortMessage());
+        Assertions.assertNotNull(repository.getCommit("v1.0"));
+
+        var objects = repository.getGit().getRepository().getObjectDatabase();
+        Assertions.assertFalse(objects.has(blob));
+
+        var next = commit(git, "b.txt", "b");
+        repository.fetch();
+        Assertions.assertTrue(repository.getExceptions().isEmpty());
+        Assertions.assertEquals("b", repository.getCommit("main").getShortMessage());
+        Assertions.assertFalse(objects.has(next));
+      }
+    }
+  }
+}
@@ -0,0 +1,168 @@
+package org.hivevm.util.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Set;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+public class RepositoryJournalTest {
+
+  @TempDir
+  File location;
+
+  private File createRepository() throws GitAPIException, IOException {
+    var work = new File(this.location, "work");
+    try (var git = RepositoryFixture.init(work)) {
+      for (int i = 0; i < 10; i++) {
+        var file = new File(work, "dir" + (i % 3) + "/file" + i + ".txt");
+        file.getParentFile().mkdirs();
+        Files.writeString(file.toPath(), "content " + i);
+      }
+      git.add().addFilepattern(".").call();
+      RepositoryFixture.commit(git, "initial");
+    }
+    return work;
+  }
+
+  private void testJournal(RepositoryJournal.Mode mode) throws GitAPIException, IOException {
+    var work = createRepository();
+    var options = new RepositoryOptions();
+    options.setJournal(mode);
+
+    try (var repository = new Repository(Git.open(work), null, options)) {
+      Assertions.assertTrue(repository.getStatus().isClean());
+      var journal = options.getJournal(repository.getGit().getRepository());
+      Assertions.assertNotNull(journal.getChanged());
+
+      Files.writeString(new File(work, "dir1/file1.txt").toPath(), "changed content");
+      Files.writeString(new File(work, "dir2/new.txt").toPath(), "new");
+      Assertions.assertTrue(journal.getChanged().containsAll(Set.of("dir1/file1.txt", "dir2/new.txt")));
+
+      var status = repository.getStatus();
+      Assertions.assertEquals(Set.of("dir1/file1.txt"), status.getModified());
+      Assertions.assertEquals(Set.of("dir2/new.txt"), status.getUntracked());
+
+      repository.commit("change");
+      Assertions.assertTrue(repository.getExceptions().isEmpty());
+
+      status = repository.getStatus();
+      Assertions.assertTrue(status.getModified().isEmpty());
+      Assertions.assertEquals(Set.of("dir2/new.txt"), status.getUntracked());
+
+      // The untracked file stays dirty, even if it isn't changed again
+      status = repository.getStatus();
+      Assertions.assertEquals(Set.of("dir2/new.txt"), status.getUntracked());
+
+      new File(work, "dir0/file0.txt").delete();
+      Assertions.assertEquals(Set.of("dir0/file0.txt"), repository.getStatus().getMissing());
+    }
+  }
+
+  @Test
+  public void testSnapshot() throws GitAPIException, IOException {
+    testJournal(RepositoryJournal.Mode.SNAPSHOT);
+  }
+
+  @Test
+  public void testSnapshotAppend() throws GitAPIException, IOException {
+    var work = createRepository();
+    var options = new RepositoryOptions();
+    options.setJournal(RepositoryJournal.Mode.SNAPSHOT);
+
+    // Files modified just now are racy, so they are aged to keep the journal clean
+    var past = System.currentTimeMillis() - 60_000;
+    try (var files = Files.walk(work.toPath())) {
+      files.filter(Files::isRegularFile).forEach(f -> f.toFile().setLastModified(past));
+    }
+
+    try (var repository = new Repository(Git.open(work), null, options)) {
+      var file = new File(repository.getGit().getRepository().getDirectory(), "hivevm/journal");
+      Assertions.assertTrue(repository.getStatus().isClean());
+      var snapshot = Files.readString(file.toPath());
+
+      Assertions.assertTrue(repository.getStatus().isClean());
+      Assertions.assertEquals(snapshot, Files.readString(file.toPath()));
+
+      var changed = new File(work, "dir1/file1.txt");
+      Files.writeString(changed.toPath(), "changed content");
+      changed.setLastModified(past);
+      Assertions.assertEquals(Set.of("dir1/file1.txt"), repository.getStatus().getModified());
+
+      var appended = Files.readString(file.toPath());
+      Assertions.assertTrue(appended.startsWith(snapshot));
+      Assertions.assertTrue(appended.substring(snapshot.length()).contains("dir1/file1.txt"));
+      Assertions.assertFalse(appended.substring(snapshot.length()).contains("dir0/file0.txt"));
+    }
+  }
+
+  @Test
+  public void testWatch() throws GitAPIException, IOException {
+    testJournal(RepositoryJournal.Mode.WATCH);
+  }
+
+  @Test
+  public void testSnapshotIgnored() throws GitAPIException, IOException {
+    var work = createRepository();
+    try (var git = Git.open(work)) {
+      Files.writeString(new File(work, ".gitignore").toPath(), "build/\ndir0/\n");
+      git.add().addFilepattern(".gitignore").call();
+      RepositoryFixture.commit(git, "ignore");
+    }
+    var output = new File(work, "build/classes/Main.class");
+    output.getParentFile().mkdirs();
+    Files.writeString(output.toPath(), "output");
+
+    var options = new RepositoryOptions();
+    options.setJournal(RepositoryJournal.Mode.SNAPSHOT);
+    try (var repository = new Repository(Git.open(work), null, options)) {
+      Assertions.assertTrue(repository.getStatus().isClean());
+      var file = new File(repository.getGit().getRepository().getDirectory(), "hivevm/journal");
+      var journal = Files.readString(file.toPath());
+      Assertions.assertFalse(journal.contains("build/"));
+      Assertions.assertTrue(journal.contains("dir0/file0.txt"));
+
+      // The tracked files of an ignored directory are still recorded
+      Files.writeString(new File(work, "dir0/file0.txt").toPath(), "changed content");
+      Assertions.assertEquals(Set.of("dir0/file0.txt"), repository.getStatus().getModified());
+    }
+  }
+
+  private void testIgnoreChanged(RepositoryJournal.Mode mode) throws GitAPIException, IOException {
+    var work = createRepository();
+    var ignore = new File(work, "dir2/.gitignore");
+    try (var git = Git.open(work)) {
+      Files.writeString(ignore.toPath(), "*.log\n");
+      git.add().addFilepattern("dir2/.gitignore").call();
+      RepositoryFixture.commit(git, "ignore");
+    }
+    Files.writeString(new File(work, "dir2/test.log").toPath(), "log");
+
+    var options = new RepositoryOptions();
+    options.setJournal(mode);
+    try (var repository = new Repository(Git.open(work), null, options)) {
+      Assertions.assertTrue(repository.getStatus().isClean());
+
+      Files.writeString(ignore.toPath(), "*.tmp\n");
+      var status = repository.getStatus();
+      Assertions.assertEquals(Set.of("dir2/.gitignore"), status.getModified());
+      Assertions.assertEquals(Set.of("dir2/test.log"), status.getUntracked());
+    }
+  }
+
+  @Test
+  public void testSnapshotIgnoreChanged() throws GitAPIException, IOException {
+    testIgnoreChanged(RepositoryJournal.Mode.SNAPSHOT);
+  }
+
+  @Test
+  public void testWatchIgnoreChanged() throws GitAPIException, IOException {
+    testIgnoreChanged(RepositoryJournal.Mode.WATCH);
+  }
+}
@@ -0,0 +1,47 @@
+package org.hivevm.util.git;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+public class RepositoryMergeBaseTest {
+
+  @TempDir
+  File location;
+
+  @Test
+  public void testMemoized() throws Exception {
+    try (var git = RepositoryFixture.init(this.location)) {
+      RepositoryFixture.commit(git, "initial");
+      var fork = RepositoryFixture.commit(git, "fork");
+      git.branchCreate().setName("release").call();
+      RepositoryFixture.commit(git, "main 1");
+      git.checkout().setName("release").call();
+      RepositoryFixture.commit(git, "release 1");
+      git.checkout().setName("main").call();
+
+      try (var repository = new Repository(git, null, new RepositoryOptions())) {
+        var service = repository.mergeBase();
+        Assertions.assertSame(service, repository.mergeBase());
+        Assertions.assertEquals(fork, repository.getMergeBase("main", "release"));
+        Assertions.assertEquals(fork, service.getMergeBase("release", "main"));
+        Assertions.assertEquals(1, service.getCacheSize());
+
+        // Moving a tip leads to a new pair
+        var merged = git.merge().include(git.getRepository().findRef("release")).setMessage("merge").call();
+        Assertions.assertTrue(merged.getMergeStatus().isSuccessful());
+        var release = git.getRepository().resolve("release");
+        Assertions.assertEquals(release, service.getMergeBase("main", "release"));
+        Assertions.assertEquals(2, service.getCacheSize());
+        Assertions.assertEquals(List.of(release), service.getMergeBases(git.getRepository().resolve("main"), release));
+        Assertions.assertEquals(2, service.getCacheSize());
+
+        Assertions.assertThrows(RepositoryException.class, () -> service.getMergeBase("main", "unknown"));
+      }
+    }
+  }
+}
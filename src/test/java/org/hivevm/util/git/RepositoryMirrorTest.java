@@ -0,0 +1,156 @@
+
+package org.hivevm.util.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.BatchingProgressMonitor;
+import org.eclipse.jgit.lib.Constants;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+public class RepositoryMirrorTest {
+
+  @TempDir
+  File location;
+
+  private void commit(String content) throws GitAPIException, IOException {
+    try (var git = Git.open(RepositoryFixture.getWork(this.location, "upstream"))) {
+      RepositoryFixture.push(git, content);
+    }
+  }
+
+  private static String content(Repository repository) throws IOException {
+    return Files.readString(new File(repository.getLocation(), RepositoryFixture.FILE).toPath());
+  }
+
+  @Test
+  public void testClone() throws GitAPIException, IOException {
+    var upstream = RepositoryFixture.createUpstream(this.location, "upstream");
+    var mirror = new RepositoryMirror(new File(this.location, "mirror"), Duration.ofHours(1));
+
+    var builder = new RepositoryBuilder(new File(this.location, "clone")).setRemote(upstream.getAbsolutePath())
+        .setBranch("main").setMirror(mirror);
+    try (var repository = builder.build()) {
+      Assertions.assertEquals("upstream", content(repository));
+
+      var config = repository.getGit().getRepository().getConfig();
+      Assertions.assertEquals(mirror.getLocation(upstream.getAbsolutePath()).getAbsolutePath(),
+          config.getString("remote", Constants.DEFAULT_REMOTE_NAME, "url"));
+      Assertions.assertEquals(upstream.getAbsolutePath(),
+          config.getString("remote", Constants.DEFAULT_REMOTE_NAME, "pushurl"));
+
+      // The fresh mirror serves the fetch, the remote isn't contacted
+      commit("changed");
+      repository.pull();
+      Assertions.assertEquals("upstream", content(repository));
+    }
+
+    var stale = new RepositoryMirror(new File(this.location, "mirror"), Duration.ZERO);
+    try (var repository = new RepositoryBuilder(new File(this.location, "clone")).setMirror(stale).build()) {
+      repository.pull();
+      Assertions.assertTrue(repository.getExceptions().isEmpty());
+      Assertions.assertEquals("changed", content(repository));
+    }
+  }
+
+  @Test
+  public void testConcurrentRefresh() throws Exception {
+    var upstream = RepositoryFixture.createUpstream(this.location, "upstream").getAbsolutePath();
+    var mirror = new RepositoryMirror(new File(this.location, "mirror"), Duration.ofHours(1));
+    var fetches = new AtomicInteger();
+    var monitor = new BatchingProgressMonitor() {
+
+      @Override
+      public void beginTask(String title, int work) {
+        if (title.startsWith("Updating references"))
+          fetches.incrementAndGet();
+      }
+
+      @Override
+      protected void onUpdate(String taskName, int workCurr, Duration duration) {}
+
+      @Override
+      protected void onEndTask(String taskName, int workCurr, Duration duration) {}
+
+      @Override
+      protected void onUpdate(String taskName, int workCurr, int workTotal, int percentDone,
+          Duration duration) {}
+
+      @Override
+      protected void onEndTask(String taskName, int workCurr, int workTotal, int percentDone,
+          Duration duration) {}
+    };
+
+    var executor = Executors.newFixedThreadPool(20);
+    try {
+      var jobs = new ArrayList<Callable<File>>();
+      for (int i = 0; i < 20; i++)
+        jobs.add(() -> mirror.update(upstream, null, monitor));
+      for (var result : executor.invokeAll(jobs))
+        Assertions.assertEquals(mirror.getLocation(upstream), result.get());
+    } finally {
+      executor.shutdown();
+    }
+
+    Assertions.assertEquals(1, fetches.get());
+    Assertions.assertFalse(mirror.isStale(upstream));
+    try (var git = Git.open(mirror.getLocation(upstream))) {
+      Assertions.assertNotNull(git.getRepository().resolve("refs/heads/main"));
+    }
+  }
+
+  @Test
+  public void testFailedClone() throws GitAPIException, IOException {
+    var upstream = RepositoryFixture.createUpstream(this.location, "upstream").getAbsolutePath();
+    var mirror = new RepositoryMirror(new File(this.location, "mirror"), Duration.ofHours(1));
+    var store = new File(this.location, "store");
+    var clone = new File(this.location, "clone");
+
+    var builder = new RepositoryBuilder(clone).setRemote(upstream).setBranch("missing").setReferenceStore(store);
+    Assertions.assertThrows(RuntimeException.class, builder::build);
+    Assertions.assertFalse(clone.exists());
+
+    builder = new RepositoryBuilder(clone).setRemote(upstream).setBranch("missing").setMirror(mirror);
+    Assertions.assertThrows(RuntimeException.class, builder::build);
+    Assertions.assertFalse(clone.exists());
+
+    builder = new RepositoryBuilder(clone).setRemote(upstream).setBranch("main").setReferenceStore(store);
+    try (var repository = builder.build()) {
+      Assertions.assertEquals("upstream", content(repository));
+    }
+  }
+
+  @Test
+  public void testReferenceStore() throws GitAPIException, IOException {
+    var upstream = RepositoryFixture.createUpstream(this.location, "upstream").getAbsolutePath();
+    var store = new File(this.location, "store");
+
+    var builder = new RepositoryBuilder(new File(this.location, "first")).setRemote(upstream)
+        .setBranch("main").setReferenceStore(store);
+    try (var repository = builder.build()) {
+      Assertions.assertEquals("upstream", content(repository));
+    }
+    var fetched = new RepositoryStore(store).getFetched(upstream);
+    Assertions.assertNotNull(fetched);
+
+    // The fresh store isn't fetched again, the clone fetches the new commit from the remote
+    commit("changed");
+    builder = new RepositoryBuilder(new File(this.location, "second")).setRemote(upstream)
+        .setBranch("main").setReferenceStore(store);
+    try (var repository = builder.build()) {
+      Assertions.assertEquals("changed", content(repository));
+    }
+    Assertions.assertEquals(fetched, new RepositoryStore(store).getFetched(upstream));
+  }
+}
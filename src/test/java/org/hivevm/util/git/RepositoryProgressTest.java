@@ -0,0 +1,69 @@
+package org.hivevm.util.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.transport.RefSpec;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+public class RepositoryProgressTest {
+
+  private static final String[] MODULES = { "a", "b", "c", "d" };
+
+  @TempDir
+  File location;
+
+  /**
+   * Creates a bare upstream repository with a number of files on the main branch.
+   */
+  private File createUpstream(String name) throws GitAPIException, IOException {
+    var upstream = RepositoryFixture.createUpstream(this.location, name);
+    try (var git = Git.open(RepositoryFixture.getWork(this.location, name))) {
+      for (int i = 0; i < 50; i++)
+        Files.writeString(new File(git.getRepository().getWorkTree(), "file" + i).toPath(), name + i);
+      git.add().addFilepattern(".").call();
+      RepositoryFixture.commit(git, name);
+      git.push().setRefSpecs(new RefSpec("HEAD:refs/heads/main")).call();
+    }
+    return upstream;
+  }
+
+  @Test
+  public void testParallelClone() throws GitAPIException, IOException {
+    var upstream = createUpstream("root");
+    try (var git = Git.open(RepositoryFixture.getWork(this.location, "root"))) {
+      for (var name : RepositoryProgressTest.MODULES)
+        git.submoduleAdd().setPath(name).setURI(createUpstream(name).getAbsolutePath()).call().close();
+      RepositoryFixture.commit(git, "modules");
+      git.push().setRefSpecs(new RefSpec("HEAD:refs/heads/main")).call();
+    }
+
+    List<RepositoryProgress> progress = new CopyOnWriteArrayList<>();
+    var aggregator = new RepositoryProgressAggregator(progress::add);
+    var builder = new RepositoryBuilder(new File(this.location, "clone")).setRemote(upstream.getAbsolutePath())
+        .setBranch("main").addSubModules(RepositoryProgressTest.MODULES).setParallelism(4)
+        .setProgressListener(aggregator);
+    try (var repository = builder.build()) {
+      for (var name : RepositoryProgressTest.MODULES)
+        Assertions.assertEquals(name + "0", Files.readString(new File(repository.getLocation(), name + "/file0").toPath()));
+    }
+
+    var locations = progress.stream().map(p -> p.location().getName()).collect(Collectors.toSet());
+    Assertions.assertTrue(locations.containsAll(Set.of(RepositoryProgressTest.MODULES)), locations.toString());
+    Assertions.assertTrue(progress.stream().anyMatch(p -> p.done() && (p.total() > 0) && (p.completed() == p.total())));
+    Assertions.assertTrue(aggregator.getBytes() > 0);
+    Assertions.assertTrue(aggregator.getActive().isEmpty());
+    Assertions.assertTrue(aggregator.getStalled(Duration.ZERO).isEmpty());
+  }
+}
@@ -0,0 +1,71 @@
+package org.hivevm.util.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.List;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.transport.RemoteRefUpdate.Status;
+import org.eclipse.jgit.transport.URIish;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+public class RepositoryPushTest {
+
+  @TempDir
+  File location;
+
+  private static Status getStatus(List<RepositoryPushResult> results, String ref) {
+    return results.stream().filter(r -> r.ref().equals(ref)).findFirst().orElseThrow().status();
+  }
+
+  @Test
+  public void testPush() throws GitAPIException, IOException, URISyntaxException {
+    var upstream = new File(this.location, "upstream.git");
+    Git.init().setDirectory(upstream).setBare(true).setInitialBranch("main").call().close();
+    var work = new File(this.location, "work");
+    try (var git = RepositoryFixture.init(work)) {
+      git.remoteAdd().setName("origin").setUri(new URIish(upstream.getAbsolutePath())).call();
+    }
+
+    try (var repository = new Repository(Git.open(work), null, new RepositoryOptions())) {
+      RepositoryFixture.commitFile(repository.getGit(), RepositoryFixture.FILE, "initial");
+      var results = repository.push();
+      Assertions.assertTrue(repository.getExceptions().isEmpty());
+      Assertions.assertEquals(Status.OK, RepositoryPushTest.getStatus(results, "refs/heads/main"));
+      Assertions.assertTrue(results.stream().allMatch(RepositoryPushResult::isSuccessful));
+
+      results = repository.push();
+      Assertions.assertEquals(Status.UP_TO_DATE,
+          RepositoryPushTest.getStatus(results, "refs/heads/main"));
+      Assertions.assertTrue(results.get(0).isSuccessful());
+
+      // The remote refuses to rewrite its history, even for a forced push
+      try (var remote = Git.open(upstream)) {
+        var config = remote.getRepository().getConfig();
+        config.setBoolean(ConfigConstants.CONFIG_RECEIVE_SECTION, null,
+            "denynonfastforwards", true);
+        config.save();
+      }
+      try (var other = Git.cloneRepository().setURI(upstream.getAbsolutePath())
+          .setDirectory(new File(this.location, "other")).call()) {
+          RepositoryFixture.push(other, "other");
+      }
+
+      RepositoryFixture.commitFile(repository.getGit(), RepositoryFixture.FILE, "local");
+      repository.getGit().tag().setName("v1.0").setAnnotated(false).setSigned(false).call();
+      results = repository.push();
+      var main = results.stream().filter(r -> r.ref().equals("refs/heads/main")).findFirst()
+          .orElseThrow();
+      Assertions.assertFalse(main.isSuccessful());
+      Assertions.assertEquals(Status.REJECTED_OTHER_REASON, main.status());
+      Assertions.assertNotNull(main.message());
+      Assertions.assertEquals(Status.OK, RepositoryPushTest.getStatus(results, "refs/tags/v1.0"));
+    }
+  }
+}
@@ -0,0 +1,45 @@
+package org.hivevm.util.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+public class RepositoryQueryTest {
+
+  @TempDir
+  File location;
+
+  @Test
+  public void testGetCommits() throws GitAPIException, IOException {
+    var ids = new ArrayList<ObjectId>();
+    try (var git = RepositoryFixture.init(this.location)) {
+      for (int i = 0; i < 200; i++)
+        ids.add(RepositoryFixture.commit(git, "commit " + i).copy());
+    }
+    Collections.shuffle(ids);
+
+    try (var repository = new Repository(Git.open(this.location), null, new RepositoryOptions())) {
+      var single = new ArrayList<String>();
+      for (var id : ids)
+        single.add(repository.getCommit(id.name()).getFullMessage());
+
+      List<String> bulk;
+      try (var query = repository.query()) {
+        bulk = query.getCommits(ids).stream().map(c -> c.getFullMessage()).toList();
+        Assertions.assertSame(query.getCommit("main"), query.getCommit(query.getCommit("main").name()));
+        Assertions.assertNull(query.getCommit("unknown"));
+      }
+      Assertions.assertEquals(single, bulk);
+    }
+  }
+}
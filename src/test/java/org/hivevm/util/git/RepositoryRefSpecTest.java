@@ -0,0 +1,96 @@
+package org.hivevm.util.git;
+
+import java.io.File;
+
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.RemoteConfig;
+import org.eclipse.jgit.transport.TagOpt;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+public class RepositoryRefSpecTest {
+
+  @TempDir
+  File location;
+
+  @Test
+  public void testRefSpecs() throws Exception {
+    var upstream = new File(this.location, "upstream");
+    try (var git = RepositoryFixture.init(upstream)) {
+      RepositoryFixture.commit(git, "initial");
+      git.tag().setName("v1.0").call();
+      git.branchCreate().setName("release/1").call();
+      git.branchCreate().setName("feature/x").call();
+      git.checkout().setName("feature/x").call();
+      RepositoryFixture.commit(git, "feature");
+      git.tag().setName("other").call();
+      git.checkout().setName("main").call();
+
+      var target = new File(this.location, "clone");
+      var builder = new RepositoryBuilder(target).setRemote(upstream.getAbsolutePath())
+          .setFetchRefSpecs("+refs/heads/main:refs/remotes/origin/main",
+              "+refs/heads/release/*:refs/remotes/origin/release/*", "+refs/tags/v*:refs/tags/v*")
+          .setTagOption(TagOpt.NO_TAGS);
+      try (var repository = builder.build()) {
+        var refs = repository.getGit().getRepository().getRefDatabase();
+        Assertions.assertEquals("main", repository.getBranch());
+        Assertions.assertNotNull(refs.exactRef("refs/remotes/origin/main"));
+        Assertions.assertNotNull(refs.exactRef("refs/remotes/origin/release/1"));
+        Assertions.assertNotNull(refs.exactRef("refs/tags/v1.0"));
+        Assertions.assertNull(refs.exactRef("refs/remotes/origin/feature/x"));
+        Assertions.assertNull(refs.exactRef("refs/tags/other"));
+
+        var config = repository.getGit().getRepository().getConfig();
+        var origin = new RemoteConfig(config, "origin");
+        Assertions.assertEquals(3, origin.getFetchRefSpecs().size());
+        Assertions.assertEquals(TagOpt.NO_TAGS, origin.getTagOpt());
+
+        repository.fetch();
+        Assertions.assertTrue(repository.getExceptions().isEmpty());
+        Assertions.assertNull(refs.exactRef("refs/remotes/origin/feature/x"));
+        Assertions.assertNull(refs.exactRef("refs/tags/other"));
+
+        repository.fetch(new RefSpec("+refs/heads/feature/x:refs/remotes/origin/feature/x"));
+        Assertions.assertTrue(repository.getExceptions().isEmpty());
+        Assertions.assertNotNull(refs.exactRef("refs/remotes/origin/feature/x"));
+        Assertions.assertNull(refs.exactRef("refs/tags/other"));
+      }
+    }
+  }
+
+  @Test
+  public void testBranchRefSpec() throws Exception {
+    var upstream = new File(this.location, "upstream");
+    try (var git = RepositoryFixture.init(upstream)) {
+      RepositoryFixture.commit(git, "initial");
+      git.checkout().setCreateBranch(true).setName("dev").call();
+      RepositoryFixture.commit(git, "dev");
+      git.checkout().setName("main").call();
+      var config = git.getRepository().getConfig();
+      config.setBoolean("uploadpack", null, "allowfilter", true);
+      config.save();
+    }
+
+    var builder = new RepositoryBuilder(new File(this.location, "clone"))
+        .setRemote(upstream.getAbsolutePath()).setBranch("dev")
+        .setFetchRefSpecs("+refs/heads/main:refs/remotes/origin/main");
+    try (var repository = builder.build()) {
+      Assertions.assertEquals("dev", repository.getBranch());
+      Assertions.assertEquals("dev", repository.getCommit("HEAD").getShortMessage());
+
+      var origin = new RemoteConfig(repository.getGit().getRepository().getConfig(), "origin");
+      Assertions.assertEquals(2, origin.getFetchRefSpecs().size());
+      Assertions.assertTrue(origin.getFetchRefSpecs()
+          .contains(new RefSpec("+refs/heads/dev:refs/remotes/origin/dev")));
+    }
+
+    builder = new RepositoryBuilder(new File(this.location, "memory"))
+        .setRemote(upstream.getAbsolutePath()).setBranch("dev").setInMemory(true)
+        .setFetchRefSpecs("+refs/heads/main:refs/heads/main");
+    try (var repository = builder.build()) {
+      Assertions.assertEquals("dev", repository.getCommit("HEAD").getShortMessage());
+    }
+  }
+}
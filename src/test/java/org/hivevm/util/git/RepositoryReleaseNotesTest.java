@@ -0,0 +1,72 @@
+package org.hivevm.util.git;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+import org.eclipse.jgit.api.Git;
+import org.hivevm.util.Version;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+public class RepositoryReleaseNotesTest {
+
+  private static final Pattern BACKLOG = Pattern.compile("(\\w+)\\s*-\\s*(?<key>\\d+)\\s*-[^\\n]+");
+
+  @TempDir
+  File location;
+
+  @Test
+  public void testStream() throws Exception {
+    var upstream = new File(this.location, "module");
+    try (var module = RepositoryFixture.init(upstream)) {
+      RepositoryFixture.commitFile(module, "a.txt", "CORE-1 - module");
+    }
+
+    var root = new File(this.location, "root");
+    try (var git = RepositoryFixture.init(root)) {
+      RepositoryFixture.commitFile(git, "README", "initial");
+      git.submoduleAdd().setPath("module").setURI(upstream.toURI().toString()).call().close();
+      RepositoryFixture.commit(git, "add module");
+      git.tag().setName("v1.0").setAnnotated(true).setMessage("1.0").call();
+
+      try (var module = Git.open(new File(root, "module"))) {
+        RepositoryFixture.commitFile(module, "b.txt", "CORE-2 - first fix");
+        RepositoryFixture.commitFile(module, "c.txt", "CORE-3 - second fix");
+      }
+      git.add().addFilepattern("module").call();
+      RepositoryFixture.commit(git, "CORE-2 - update module");
+      RepositoryFixture.commitFile(git, "README", "CORE-4 - readme");
+      git.tag().setName("v1.1").setAnnotated(true).setMessage("1.1").call();
+
+      var executor = Executors.newFixedThreadPool(2);
+      try (var repository = new Repository(git, null, new RepositoryOptions())) {
+        var notes = repository.releaseNotes(executor, BACKLOG);
+        try (var stream = notes.stream(Version.of(1, 0), Version.of(1, 1))) {
+          var list = stream.toList();
+          Assertions.assertEquals(4, list.size());
+          Assertions.assertEquals("", list.get(0).module());
+          Assertions.assertEquals("CORE-4 - readme", list.get(0).summary());
+          Assertions.assertEquals("module", list.get(2).module());
+          Assertions.assertEquals(List.of("3"), list.get(2).keys());
+        }
+
+        var groups = RepositoryReleaseNotes.groupByKey(
+            repository.releaseNotes(null, BACKLOG).stream(Version.of(1, 0), Version.of(1, 1)));
+        Assertions.assertEquals(List.of("4", "2", "3"), List.copyOf(groups.keySet()));
+        Assertions.assertEquals(2, groups.get("2").size());
+
+        try (var stream = notes.stream(Version.of(1, 0), Version.of(1, 1))) {
+          Assertions.assertEquals("CORE-4 - readme", stream.findFirst().get().summary());
+        }
+        Assertions.assertTrue(repository.getExceptions().isEmpty());
+        Assertions.assertThrows(RepositoryException.class, () -> notes.stream(Version.of(1, 0), Version.of(2, 0)));
+      } finally {
+        executor.shutdown();
+      }
+    }
+  }
+}
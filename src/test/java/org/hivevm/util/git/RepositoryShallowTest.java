@@ -0,0 +1,48 @@
+package org.hivevm.util.git;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+public class RepositoryShallowTest {
+
+  @TempDir
+  File location;
+
+  @Test
+  public void testGitlinkBehindTip() throws GitAPIException, IOException {
+    var upstream = new File(this.location, "module");
+    RevCommit gitlink;
+    try (var git = RepositoryFixture.init(upstream)) {
+      RepositoryFixture.commit(git, "m1");
+      gitlink = RepositoryFixture.commit(git, "m2");
+      RepositoryFixture.commit(git, "m3");
+    }
+
+    var root = new File(this.location, "root");
+    try (var git = RepositoryFixture.init(root)) {
+      RepositoryFixture.commit(git, "root");
+      try (var repository = git.submoduleAdd().setPath("module").setURI(upstream.toURI().toString()).call()) {
+        new Git(repository).checkout().setName(gitlink.name()).call();
+      }
+      git.add().addFilepattern("module").call();
+      RepositoryFixture.commit(git, "module");
+    }
+
+    var builder = new RepositoryBuilder(new File(this.location, "clone")).setRemote(root.toURI().toString())
+        .setBranch("main").setDepth(1).addSubModules("module");
+    try (var repository = builder.build()) {
+      try (var module = Git.open(new File(repository.getLocation(), "module"))) {
+        Assertions.assertEquals(gitlink.getId(), module.getRepository().resolve("HEAD"));
+        Assertions.assertEquals("main", module.getRepository().getBranch());
+      }
+    }
+  }
+}
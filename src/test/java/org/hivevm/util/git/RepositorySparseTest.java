@@ -0,0 +1,108 @@
+
+package org.hivevm.util.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.errors.CheckoutConflictException;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+public class RepositorySparseTest {
+
+  @TempDir
+  File location;
+
+  /**
+   * Creates an upstream repository with the directories a, b and c/sub on the main branch and
+   * changes of a and b on the dev branch.
+   */
+  private File createUpstream() throws GitAPIException, IOException {
+    var upstream = new File(this.location, "upstream");
+    try (var git = RepositoryFixture.init(upstream)) {
+      RepositoryFixture.commitFile(git, "README", "readme");
+      RepositoryFixture.commitFile(git, "a/x.txt", "x");
+      RepositoryFixture.commitFile(git, "b/y.txt", "y");
+      RepositoryFixture.commitFile(git, "c/top.txt", "top");
+      RepositoryFixture.commitFile(git, "c/sub/z.txt", "z");
+      git.checkout().setCreateBranch(true).setName("dev").call();
+      RepositoryFixture.commitFile(git, "a/x.txt", "x-dev");
+      RepositoryFixture.commitFile(git, "b/y.txt", "y-dev");
+      git.checkout().setName("main").call();
+    }
+    return upstream;
+  }
+
+  private static boolean exists(Repository repository, String path) {
+    return new File(repository.getLocation(), path).exists();
+  }
+
+  @Test
+  public void testCheckout() throws GitAPIException, IOException {
+    var builder = new RepositoryBuilder(new File(this.location, "sparse"))
+        .setRemote(createUpstream().getAbsolutePath()).setBranch("main").setSparseCheckout("a", "c/sub");
+    try (var repository = builder.build()) {
+      Assertions.assertTrue(exists(repository, "README"));
+      Assertions.assertTrue(exists(repository, "a/x.txt"));
+      Assertions.assertTrue(exists(repository, "c/top.txt"));
+      Assertions.assertTrue(exists(repository, "c/sub/z.txt"));
+      Assertions.assertFalse(exists(repository, "b/y.txt"));
+      Assertions.assertTrue(repository.getGit().status().call().isClean());
+
+      repository.checkout("dev");
+      Assertions.assertEquals("dev", repository.getBranch());
+      Assertions.assertEquals("x-dev", Files.readString(new File(repository.getLocation(), "a/x.txt").toPath()));
+      Assertions.assertFalse(exists(repository, "b/y.txt"));
+      Assertions.assertTrue(repository.getGit().status().call().isClean());
+      Assertions.assertTrue(repository.getExceptions().isEmpty());
+    }
+  }
+
+  @Test
+  public void testCommit() throws GitAPIException, IOException {
+    var builder = new RepositoryBuilder(new File(this.location, "sparse"))
+        .setRemote(createUpstream().getAbsolutePath()).setBranch("main").setSparseCheckout("a");
+    try (var repository = builder.build()) {
+      Files.writeString(new File(repository.getLocation(), "a/x.txt").toPath(), "changed");
+      repository.commit("change");
+      Assertions.assertTrue(repository.getExceptions().isEmpty());
+
+      var git = repository.getGit().getRepository();
+      var head = git.parseCommit(git.resolve("HEAD"));
+      Assertions.assertEquals("change", head.getShortMessage());
+      try (var walk = TreeWalk.forPath(git, "b/y.txt", head.getTree())) {
+        Assertions.assertNotNull(walk);
+      }
+      Assertions.assertFalse(exists(repository, "b/y.txt"));
+    }
+  }
+
+  @Test
+  public void testLocalChanges() throws GitAPIException, IOException {
+    var upstream = createUpstream();
+    var builder = new RepositoryBuilder(new File(this.location, "sparse"))
+        .setRemote(upstream.getAbsolutePath()).setBranch("main").setSparseCheckout("a");
+    try (var repository = builder.build()) {
+      var file = new File(repository.getLocation(), "a/x.txt");
+      Files.writeString(file.toPath(), "MY LOCAL WORK");
+
+      Assertions.assertThrows(CheckoutConflictException.class, () -> repository.checkout("dev"));
+      Assertions.assertEquals("main", repository.getBranch());
+      Assertions.assertNull(repository.getGit().getRepository().findRef("refs/heads/dev"));
+      Assertions.assertEquals("MY LOCAL WORK", Files.readString(file.toPath()));
+
+      try (var git = Git.open(upstream)) {
+        RepositoryFixture.commitFile(git, "a/x.txt", "upstream");
+      }
+      repository.pull();
+      Assertions.assertInstanceOf(CheckoutConflictException.class, repository.getExceptions().get(0));
+      Assertions.assertEquals("MY LOCAL WORK", Files.readString(file.toPath()));
+    }
+  }
+}
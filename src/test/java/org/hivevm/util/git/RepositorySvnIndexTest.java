@@ -0,0 +1,50 @@
+package org.hivevm.util.git;
+
+import java.io.File;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+public class RepositorySvnIndexTest {
+
+  @TempDir
+  File location;
+
+  private static ObjectId commit(Git git, int revision) throws GitAPIException {
+    var message = "change " + revision + "\n\ngit-svn-id: svn://svn.example.org/product/trunk@" + revision
+        + " 0b7a4f3c-1d2e-4f5a-9b8c-7d6e5f4a3b2c";
+    return RepositoryFixture.commit(git, message).toObjectId();
+  }
+
+  @Test
+  public void testIndex() throws Exception {
+    try (var git = RepositoryFixture.init(this.location)) {
+      var first = commit(git, 100);
+      for (int i = 101; i < 200; i++)
+        commit(git, i);
+      git.tag().setName("r199").setAnnotated(true).setMessage("r199").call();
+      RepositoryFixture.commit(git, "not migrated");
+
+      try (var repository = new Repository(git, null, new RepositoryOptions())) {
+        var index = repository.svnIndex();
+        Assertions.assertEquals(first, index.getCommit(100));
+        Assertions.assertEquals(100, index.size());
+        Assertions.assertNull(index.getCommit(99));
+        Assertions.assertEquals(0, index.update());
+        Assertions.assertTrue(new File(this.location, ".git/hivevm/svn-index").exists());
+
+        var next = commit(git, 200);
+        var reopened = repository.svnIndex();
+        Assertions.assertEquals(100, reopened.size());
+        Assertions.assertEquals(next, reopened.getCommit(200));
+        Assertions.assertEquals(101, reopened.size());
+        Assertions.assertEquals(101, repository.svnIndex().size());
+      }
+    }
+  }
+}
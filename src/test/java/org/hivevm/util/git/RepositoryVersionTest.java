@@ -0,0 +1,175 @@
+
+package org.hivevm.util.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.RevWalkUtils;
+import org.hivevm.util.Version;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+public class RepositoryVersionTest {
+
+  private static final Pattern PATTERN = Pattern.compile(
+      "(?<major>\\d+)[./](?<minor>\\d+)(?:[./](?<patch>\\d+))?(?:-(?<name>[a-zA-Z0-9.]+))?(?:\\+(?<build>[a-zA-Z0-9.]+))?");
+
+  @TempDir
+  File location;
+
+  /**
+   * Creates a history with tags on the main line and on merged side branches.
+   */
+  private Git createHistory(int commits) throws GitAPIException, IOException {
+    var git = RepositoryFixture.init(this.location);
+    var tags = 0;
+    for (int i = 0; i < commits; i++) {
+      RepositoryFixture.commitFile(git, "file" + (i % 5), "v" + i);
+      if ((i % 7) == 0)
+        git.tag().setName("1." + (tags++) + ".0").setAnnotated((i % 2) == 0).call();
+      if ((i % 50) == 10) {
+        git.checkout().setCreateBranch(true).setName("side" + i).call();
+        for (int k = 0; k < 5; k++) {
+          RepositoryFixture.commitFile(git, "side" + i + k, "s" + k);
+          if (k == 2)
+            git.tag().setName("2." + i + ".0").call();
+        }
+        git.checkout().setName("main").call();
+        RepositoryFixture.commitFile(git, "main" + i, "m" + i);
+        git.merge().include(git.getRepository().resolve("side" + i)).setMessage("merge").call();
+      }
+    }
+    return git;
+  }
+
+  /**
+   * The former resolution, which walks the history for every tag.
+   */
+  private static List<RepositoryVersion.TagInfo> getTagsLegacy(Git git, RevWalk walk, RevCommit rev)
+      throws GitAPIException {
+      return git.tagList().call().stream().map(tag -> {
+        try {
+          var tagCommit = walk.parseCommit(tag.getObjectId());
+          if (walk.isMergedInto(tagCommit, rev)) {
+            var version = Version.parse(tag.getName(), PATTERN);
+            return new RepositoryVersion.TagInfo(tag, RevWalkUtils.count(walk, rev, tagCommit), version);
+          }
+        } catch (Exception e) {
+          // not a version
+        }
+        return new RepositoryVersion.TagInfo(tag, -1, null);
+      }).filter(i -> i.count() != -1).sorted().collect(Collectors.toList());
+  }
+
+  /**
+   * Gets the tags of the legacy list, which are not behind another tagged commit.
+   */
+  private static List<String> getNearest(RevWalk walk, List<RepositoryVersion.TagInfo> tags)
+      throws IOException {
+    var nearest = new ArrayList<String>();
+    for (var tag : tags) {
+      var commit = walk.parseCommit(tag.ref().getObjectId());
+      var behind = false;
+      for (var other : tags) {
+        var otherCommit = walk.parseCommit(other.ref().getObjectId());
+        behind |= !commit.equals(otherCommit) && walk.isMergedInto(commit, otherCommit);
+      }
+      if (!behind)
+        nearest.add(tag.name());
+    }
+    return nearest;
+  }
+
+  @Test
+  public void testTags() throws GitAPIException, IOException {
+    try (var git = createHistory(400); var walk = new RevWalk(git.getRepository())) {
+      var head = walk.parseCommit(git.getRepository().resolve("HEAD"));
+
+      var time = System.nanoTime();
+      var legacy = getTagsLegacy(git, walk, head);
+      var timeLegacy = System.nanoTime() - time;
+
+      time = System.nanoTime();
+      var tags = new ArrayList<>(RepositoryVersion.getTags(git, head, walk));
+      var timeTags = System.nanoTime() - time;
+
+      System.out.printf("Tags of %d: legacy %d ms, describe %d ms\n", legacy.size(),
+          timeLegacy / 1000000, timeTags / 1000000);
+
+      Assertions.assertFalse(tags.isEmpty());
+      Assertions.assertTrue(tags.size() < legacy.size());
+      Assertions.assertEquals(legacy.get(0).name(), tags.get(0).name());
+      for (var tag : tags) {
+        var expected = legacy.stream().filter(t -> t.name().equals(tag.name())).findFirst();
+        Assertions.assertEquals(expected.orElseThrow().count(), tag.count());
+      }
+      var names = tags.stream().map(RepositoryVersion.TagInfo::name).toList();
+      Assertions.assertTrue(names.containsAll(getNearest(walk, legacy)));
+    }
+  }
+
+  /**
+   * Creates a merge of a side branch, whose tag 1.0.0 is 4 commits behind HEAD, into the main
+   * line, whose older tag 2.0.0 is 6 commits behind HEAD.
+   */
+  @Test
+  public void testNearestTag() throws GitAPIException, IOException {
+    try (var git = RepositoryFixture.init(this.location)) {
+      var time = Instant.parse("2024-01-01T00:00:00Z");
+      RepositoryFixture.commit(git, "root", time);
+      git.checkout().setCreateBranch(true).setName("side").call();
+      RepositoryFixture.commit(git, "p1", time.plusSeconds(4));
+      RepositoryFixture.commit(git, "p2", time.plusSeconds(5));
+      RepositoryFixture.commit(git, "x", time.plusSeconds(6));
+      git.tag().setName("1.0.0").call();
+
+      git.checkout().setName("main").call();
+      RepositoryFixture.commit(git, "y", time.plusSeconds(1));
+      git.tag().setName("2.0.0").call();
+      RepositoryFixture.commit(git, "m1", time.plusSeconds(2));
+      RepositoryFixture.commit(git, "m2", time.plusSeconds(3));
+      git.merge().include(git.getRepository().resolve("side")).setCommit(false).call();
+      RepositoryFixture.commit(git, "merge", time.plusSeconds(10));
+
+      try (var walk = new RevWalk(git.getRepository())) {
+        var head = walk.parseCommit(git.getRepository().resolve("HEAD"));
+        var legacy = getTagsLegacy(git, walk, head);
+        var tags = new ArrayList<>(RepositoryVersion.getTags(git, head, walk));
+        Assertions.assertEquals(List.of("refs/tags/1.0.0", "refs/tags/2.0.0"),
+            tags.stream().map(RepositoryVersion.TagInfo::name).toList());
+        Assertions.assertEquals(List.of(4, 6), tags.stream().map(RepositoryVersion.TagInfo::count).toList());
+        Assertions.assertEquals(legacy.stream().map(RepositoryVersion.TagInfo::name).toList(),
+            tags.stream().map(RepositoryVersion.TagInfo::name).toList());
+      }
+    }
+  }
+
+  @Test
+  public void testShallowCommitCount() throws GitAPIException, IOException {
+    try (var git = createHistory(60)) {
+      var expected = StreamSupport.stream(git.log().call().spliterator(), false).count();
+
+      var builder = new RepositoryBuilder(new File(this.location, "shallow"))
+          .setRemote(this.location.getAbsolutePath()).setBranch("main").setDepth(5);
+      try (var shallow = builder.build()) {
+        var repository = shallow.getGit().getRepository();
+        Assertions.assertFalse(repository.getObjectDatabase().getShallowCommits().isEmpty());
+
+        var head = repository.parseCommit(repository.resolve("HEAD"));
+        Assertions.assertEquals(expected, RepositoryVersion.getCommitCount(shallow.getGit(), head));
+      }
+    }
+  }
+}
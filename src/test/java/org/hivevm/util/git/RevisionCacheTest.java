@@ -0,0 +1,111 @@
+package org.hivevm.util.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.hivevm.util.Version;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+public class RevisionCacheTest {
+
+  private static final Version VERSION = Version.of(1, 2, 3);
+
+  @TempDir
+  File location;
+
+  private final AtomicInteger loads = new AtomicInteger();
+
+  private Revision get(Git git, Version version) throws IOException {
+    return RevisionCache.get(git.getRepository(), version, () -> {
+      this.loads.incrementAndGet();
+      var head = git.getRepository().resolve("HEAD").name();
+      return new Revision(head, OffsetDateTime.parse("2024-01-01T12:00:00Z"), version);
+    });
+  }
+
+  @Test
+  public void testCache() throws GitAPIException, IOException {
+    try (var git = RepositoryFixture.init(this.location)) {
+      RepositoryFixture.commit(git, "initial");
+
+      var revision = get(git, RevisionCacheTest.VERSION);
+      Assertions.assertEquals(1, this.loads.get());
+      Assertions.assertSame(revision, get(git, RevisionCacheTest.VERSION));
+      Assertions.assertEquals(1, this.loads.get());
+
+      // A later process reads the revision from the file in the Git directory
+      RevisionCache.clear();
+      var persisted = get(git, RevisionCacheTest.VERSION);
+      Assertions.assertEquals(1, this.loads.get());
+      Assertions.assertEquals(revision.hash(), persisted.hash());
+      Assertions.assertEquals(revision.toString(), persisted.toString());
+
+      RepositoryFixture.commit(git, "change");
+      Assertions.assertNotEquals(revision.hash(), get(git, RevisionCacheTest.VERSION).hash());
+      Assertions.assertEquals(2, this.loads.get());
+
+      git.tag().setName("v1.2.3").setSigned(false).setAnnotated(false).call();
+      get(git, RevisionCacheTest.VERSION);
+      Assertions.assertEquals(3, this.loads.get());
+
+      get(git, Version.of(1, 3, 0));
+      Assertions.assertEquals(4, this.loads.get());
+    }
+  }
+
+  @Test
+  public void testLimit() throws GitAPIException, IOException {
+    try (var git = RepositoryFixture.init(this.location)) {
+      RepositoryFixture.commit(git, "initial");
+
+      for (int i = 0; i < 100; i++)
+        get(git, Version.of(1, i, 0));
+      Assertions.assertEquals(100, this.loads.get());
+
+      // Only the most recent revisions are kept
+      RevisionCache.clear();
+      get(git, Version.of(1, 99, 0));
+      Assertions.assertEquals(100, this.loads.get());
+      get(git, Version.of(1, 0, 0));
+      Assertions.assertEquals(101, this.loads.get());
+    }
+  }
+
+  @Test
+  public void testUnwritable() throws GitAPIException, IOException {
+    try (var git = RepositoryFixture.init(this.location)) {
+      RepositoryFixture.commit(git, "initial");
+      Files.writeString(new File(git.getRepository().getDirectory(), "hivevm").toPath(), "");
+
+      // A cache that can't be written is a cache miss for the next process
+      var revision = get(git, RevisionCacheTest.VERSION);
+      Assertions.assertEquals(1, this.loads.get());
+      RevisionCache.clear();
+      Assertions.assertEquals(revision.hash(), get(git, RevisionCacheTest.VERSION).hash());
+      Assertions.assertEquals(2, this.loads.get());
+    }
+  }
+
+  @Test
+  public void testTemporaryFiles() throws GitAPIException, IOException {
+    try (var git = RepositoryFixture.init(this.location)) {
+      RepositoryFixture.commit(git, "initial");
+
+      for (int i = 0; i < 10; i++)
+        get(git, Version.of(1, i, 0));
+      var directory = new File(git.getRepository().getDirectory(), "hivevm");
+      Assertions.assertEquals(List.of("revisions", "revisions.lock"),
+          Arrays.stream(directory.list()).sorted().toList());
+    }
+  }
+}